@@ -3,6 +3,8 @@ package aaacs.coreserver.commons.communication;
 import java.io.Serializable;
 import java.util.Locale;
 
+import aaacs.coreserver.commons.utilities.Clock;
+
 /**
  * @author Ahmed A. Abd-Allah
  * Created on Nov 17, 2003 at 12:31:40 PM.
@@ -39,7 +41,15 @@ public abstract class ActionCommunication implements Serializable
 	// A transmission counter
 	private byte txCounter = 0;
 	private long timeReceived = 0;
-	private long timeCreated = System.currentTimeMillis();
+	private long timeCreated = Clock.getDefault().currentTimeMillis();
+	// The Clock.nanoTime() of markTimeReceived(), for measuring how long the
+	// communication takes to handle; only meaningful where it was received
+	private transient long nanoTimeReceived = 0;
+	// Matches a response to its request when several are in flight on one
+	// connection (see ActionMultiplexer); 0 if not set
+	private long correlationId = 0;
+	// When the round trip went through each phase; null unless asked for
+	private Timings timings = null;
 
 	public ActionCommunication(Locale inLocale, LoginToken inLoginToken, 
 		Parameters inParameters)
@@ -62,6 +72,8 @@ public abstract class ActionCommunication implements Serializable
 	public byte getTxCounter() { return txCounter; }
 	public long getTimeCreated() { return timeCreated; }
 	public long getTimeReceived() { return timeReceived; }
+	public long getNanoTimeReceived() { return nanoTimeReceived; }
+	public long getCorrelationId() { return correlationId; }
 
 	public void setLocale(Locale l) { if (l!=null) locale = l; }
 	public void setLoginToken(LoginToken lt) 
@@ -70,8 +82,47 @@ public abstract class ActionCommunication implements Serializable
 		else loginToken = new LoginToken();
 	}
 	public void incrementTxCounter() { txCounter++; }
+	public void setCorrelationId(long id) { correlationId = id; }
+
+	public Timings getTimings() { return timings; }
+	public void setTimings(Timings t) { timings = t; }
+
+	/**
+	 * Has the phases of this communication timed from now on (see Timings),
+	 * starting with CREATED.
+	 */
+	public Timings startTimings()
+	{
+		timings = new Timings().mark(Timings.Phase.CREATED);
+		return timings;
+	}
+
+	/**
+	 * Marks the phase as reached now, if the communication is timed.
+	 */
+	public void mark(Timings.Phase phase)
+	{
+		if (timings != null)
+			timings.mark(phase);
+	}
 	// No setter for timeCreated obviously
-	public void markTimeReceived() { timeReceived = System.currentTimeMillis(); }
+	public void markTimeReceived()
+	{
+		Clock clock = Clock.getDefault();
+		timeReceived = clock.currentTimeMillis();
+		nanoTimeReceived = clock.nanoTime();
+	}
+
+	/**
+	 * Only for restoring a communication that was sent over the wire (see
+	 * BinaryCodec): these are otherwise never set from the outside.
+	 */
+	void restore(byte inTxCounter, long inTimeCreated, long inTimeReceived)
+	{
+		txCounter = inTxCounter;
+		timeCreated = inTimeCreated;
+		timeReceived = inTimeReceived;
+	}
 
 	public Parameters getParameters()
 	{
@@ -95,4 +146,24 @@ public abstract class ActionCommunication implements Serializable
 	{
 		parameters = null;
 	}
+
+	/**
+	 * Brings the communication back to the state of a newly created one, so
+	 * that it can be reused (see CommunicationPool): the default locale, an
+	 * empty login token, no parameters, a counter and correlation ID of 0, no
+	 * timings, not received, and created now. The parameters are dropped, not reset, as
+	 * they may be in use elsewhere. Subclasses reset their own members too.
+	 */
+	public void reset()
+	{
+		locale = defaultLocale;
+		setLoginToken(null);
+		parameters = null;
+		txCounter = 0;
+		timeCreated = Clock.getDefault().currentTimeMillis();
+		timeReceived = 0;
+		nanoTimeReceived = 0;
+		correlationId = 0;
+		timings = null;
+	}
 }
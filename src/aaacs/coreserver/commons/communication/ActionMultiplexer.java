@@ -0,0 +1,401 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The client side of one connection to the Core Server, on which any number of
+ * requests may be in flight at once. Each request sent is given the next
+ * correlation ID, and the answer to it is whichever response comes back with
+ * the same ID, in whatever order the responses complete; so a few connections
+ * can serve many concurrent callers.
+ *
+ * Communications go both ways as BinaryCodec frames (see
+ * BinaryCodec.writeFrame()); the server answers each request with a response
+ * that echoes its correlation ID (see ActionResponse(ActionCommunication, ...)),
+ * with a batch answered by a batch. A request may also be answered in parts
+ * (see sendChunked() and ChunkedResponseWriter), which are handed over one by
+ * one as they come.
+ *
+ * <pre>
+ * ActionMultiplexer connection = new ActionMultiplexer(socket.getInputStream(),
+ *     socket.getOutputStream());
+ * Future&lt;ActionResponse&gt; answer = connection.send(request);
+ * ...
+ * ActionResponse response = answer.get(5, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * Responses are read by a daemon thread of its own. When the connection fails
+ * or is closed, every request still waiting fails with the IOException as the
+ * cause of its ExecutionException. A multiplexer is thread-safe.
+ */
+public class ActionMultiplexer implements Closeable
+{
+	// ----- Instance members -------------------------------------------------
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private final AtomicLong lastCorrelationId = new AtomicLong();
+	private final ConcurrentMap<Long, Receiver> pending =
+		new ConcurrentHashMap<Long, Receiver>();
+	private final Thread reader;
+	private volatile IOException failure = null;
+
+	public ActionMultiplexer(InputStream inStream, OutputStream outStream)
+	{
+		in = new DataInputStream(new BufferedInputStream(inStream));
+		out = new DataOutputStream(new BufferedOutputStream(outStream));
+		reader = new Thread(new Runnable()
+		{
+			public void run() { readResponses(); }
+		}, "ActionMultiplexer");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	// ----- Sending ----------------------------------------------------------
+	/**
+	 * Sends the request, after setting its correlation ID.
+	 *
+	 * @return the response to come
+	 */
+	public Future<ActionResponse> send(ActionRequest request) throws IOException
+	{
+		return send(request, ActionResponse.class);
+	}
+
+	public Future<ActionResponseBatch> send(ActionRequestBatch batch) throws IOException
+	{
+		return send(batch, ActionResponseBatch.class);
+	}
+
+	/**
+	 * Sends a request that is answered in parts.
+	 *
+	 * @return the parts to come
+	 */
+	public ResponseParts sendChunked(ActionRequest request) throws IOException
+	{
+		long id = lastCorrelationId.incrementAndGet();
+		ResponseParts parts = new ResponseParts(id);
+		send(id, request, parts);
+		return parts;
+	}
+
+	private <T extends ActionCommunication> Future<T> send(ActionCommunication request,
+		Class<T> responseClass) throws IOException
+	{
+		long id = lastCorrelationId.incrementAndGet();
+		Answer<T> answer = new Answer<T>(id, responseClass);
+		send(id, request, answer);
+		return answer;
+	}
+
+	private void send(long id, ActionCommunication request, Receiver receiver)
+		throws IOException
+	{
+		checkOpen();
+		request.setCorrelationId(id);
+		pending.put(id, receiver);
+		try
+		{
+			synchronized (out)
+			{
+				BinaryCodec.writeFrame(out, request);
+				out.flush();
+			}
+		}
+		catch (IOException e)
+		{
+			pending.remove(id);
+			throw e;
+		}
+		// the reader may have failed in the meantime, missing this answer
+		if (failure != null && pending.remove(id) != null)
+			throw failure;
+	}
+
+	/**
+	 * @return how many requests are waiting for their response
+	 */
+	public int getPendingCount() { return pending.size(); }
+
+	/**
+	 * Closes the connection; the requests still waiting fail.
+	 */
+	public void close() throws IOException
+	{
+		fail(new IOException("multiplexer.Closed"));
+		try
+		{
+			synchronized (out) { out.close(); }
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void checkOpen() throws IOException
+	{
+		IOException e = failure;
+		if (e != null)
+			throw e;
+	}
+
+	// ----- Receiving --------------------------------------------------------
+	private void readResponses()
+	{
+		try
+		{
+			while (true)
+			{
+				ActionCommunication response;
+				try
+				{
+					response = BinaryCodec.readFrame(in);
+				}
+				catch (EOFException e)
+				{
+					throw new IOException("multiplexer.ConnectionClosed", e);
+				}
+				response.markTimeReceived();
+				long id = response.getCorrelationId();
+				Receiver receiver = pending.get(id);
+				// else the request was cancelled, and its answer is of no use
+				if (receiver != null && receiver.receive(response))
+					pending.remove(id, receiver);
+			}
+		}
+		catch (IOException e)
+		{
+			fail(e);
+		}
+		catch (RuntimeException e)
+		{
+			fail(new IOException("multiplexer.ReaderFailed", e));
+		}
+	}
+
+	private void fail(IOException e)
+	{
+		synchronized (this)
+		{
+			if (failure == null)
+				failure = e;
+		}
+		for (Map.Entry<Long, Receiver> entry : pending.entrySet())
+			if (pending.remove(entry.getKey(), entry.getValue()))
+				entry.getValue().fail(failure);
+	}
+
+	// ----- Answers ----------------------------------------------------------
+	/**
+	 * What waits for the answer to one request.
+	 */
+	private interface Receiver
+	{
+		/**
+		 * @return true if that was the whole answer
+		 */
+		boolean receive(ActionCommunication response);
+
+		void fail(Throwable cause);
+	}
+
+	/**
+	 * The response to one request, once it has come.
+	 */
+	private class Answer<T extends ActionCommunication> implements Future<T>, Receiver
+	{
+		private final long id;
+		private final Class<T> responseClass;
+		private final CountDownLatch done = new CountDownLatch(1);
+		// set by whichever of receive(), fail() and cancel() comes first
+		private final AtomicBoolean completed = new AtomicBoolean(false);
+		private volatile T response = null;
+		private volatile Throwable cause = null;
+		private volatile boolean cancelled = false;
+
+		Answer(long inId, Class<T> inResponseClass)
+		{
+			id = inId;
+			responseClass = inResponseClass;
+		}
+
+		public boolean receive(ActionCommunication inResponse)
+		{
+			if (!completed.compareAndSet(false, true))
+				return true; // cancelled in the meantime
+			if (responseClass.isInstance(inResponse))
+				response = responseClass.cast(inResponse);
+			else
+				cause = unexpected(inResponse, id);
+			done.countDown();
+			return true;
+		}
+
+		public void fail(Throwable inCause)
+		{
+			if (!completed.compareAndSet(false, true))
+				return;
+			cause = inCause;
+			done.countDown();
+		}
+
+		/**
+		 * Stops waiting for the response, which is dropped if it comes; the
+		 * request itself has been sent already, and is carried out anyway. A
+		 * response that has come already is kept: the answer is then done, and
+		 * cannot be cancelled.
+		 */
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			if (!completed.compareAndSet(false, true))
+				return false;
+			pending.remove(id, this);
+			cancelled = true;
+			done.countDown();
+			return true;
+		}
+
+		public boolean isCancelled() { return cancelled; }
+		public boolean isDone() { return done.getCount() == 0; }
+
+		public T get() throws InterruptedException, ExecutionException
+		{
+			done.await();
+			return result();
+		}
+
+		public T get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException
+		{
+			if (!done.await(timeout, unit))
+				throw new TimeoutException();
+			return result();
+		}
+
+		private T result() throws ExecutionException
+		{
+			if (cancelled)
+				throw new CancellationException();
+			if (cause != null)
+				throw new ExecutionException(cause);
+			return response;
+		}
+	}
+
+	/**
+	 * The parts of a response to one request, which are handed over in the
+	 * order they come. Only one thread should take them.
+	 *
+	 * <pre>
+	 * for (ActionResponse part = parts.next(); part != null; part = parts.next())
+	 *     show(part.getParameters());
+	 * </pre>
+	 */
+	public class ResponseParts implements Receiver
+	{
+		private final long id;
+		// ActionResponses, and a Throwable if the connection fails
+		private final BlockingQueue<Object> parts = new LinkedBlockingQueue<Object>();
+		private boolean ended = false;
+
+		ResponseParts(long inId)
+		{
+			id = inId;
+		}
+
+		public boolean receive(ActionCommunication response)
+		{
+			if (!(response instanceof ActionResponse))
+			{
+				fail(unexpected(response, id));
+				return true;
+			}
+			parts.add(response);
+			return !((ActionResponse) response).isPartial();
+		}
+
+		public void fail(Throwable cause)
+		{
+			parts.add(cause);
+		}
+
+		/**
+		 * Waits for the next part.
+		 *
+		 * @return the next part, or null once the final part has been taken
+		 */
+		public ActionResponse next() throws IOException, InterruptedException
+		{
+			if (ended)
+				return null;
+			return take(parts.take());
+		}
+
+		public ActionResponse next(long timeout, TimeUnit unit)
+			throws IOException, InterruptedException, TimeoutException
+		{
+			if (ended)
+				return null;
+			Object part = parts.poll(timeout, unit);
+			if (part == null)
+				throw new TimeoutException();
+			return take(part);
+		}
+
+		/**
+		 * Stops waiting for the rest of the parts, which are dropped if they
+		 * come.
+		 */
+		public void cancel()
+		{
+			pending.remove(id, this);
+			ended = true;
+			parts.clear();
+		}
+
+		private ActionResponse take(Object part) throws IOException
+		{
+			if (part instanceof Throwable)
+			{
+				ended = true;
+				if (part instanceof IOException)
+					throw (IOException) part;
+				throw new IOException((Throwable) part);
+			}
+			ActionResponse response = (ActionResponse) part;
+			if (!response.isPartial())
+				ended = true;
+			return response;
+		}
+	}
+
+	private static IOException unexpected(ActionCommunication response, long id)
+	{
+		return new StreamCorruptedException("unexpected answer " +
+			response.getClass().getName() + " for correlation ID " + id);
+	}
+}
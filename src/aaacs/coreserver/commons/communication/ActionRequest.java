@@ -50,4 +50,11 @@ public class ActionRequest extends ActionCommunication implements Serializable
 
 	public void setActionName(String string) { actionName = string; }
 	public void setActionVersion(short s) { actionVersion = s; }
+
+	public void reset()
+	{
+		super.reset();
+		setActionName(null);
+		setActionVersion((short) 0);
+	}
 }
@@ -0,0 +1,93 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Several actions sent to the Core Server at once, e.g. everything a page
+ * needs to display a listing. The locale, login token, transmission counter
+ * and times of the batch are shared by all its entries, which only have an
+ * action name, an action version, and their own parameters.
+ *
+ * Each entry can be turned into an ordinary ActionRequest with the header of
+ * the batch, so that the actions are carried out just as if they had been sent
+ * one by one; the answer is an ActionResponseBatch with one entry per entry,
+ * in the same order.
+ */
+public class ActionRequestBatch extends ActionCommunication implements Serializable
+{
+	// ----- Static Data Members ----------------------------------------------
+	/**
+	 * Serialization Version Number
+	 */
+	private static final long serialVersionUID = 1000L;
+
+	/**
+	 * One action of the batch.
+	 */
+	public static class Entry implements Serializable
+	{
+		private static final long serialVersionUID = 1000L;
+
+		private final String actionName;
+		private final short actionVersion;
+		private final Parameters parameters;
+
+		public Entry(String inActionName, short inActionVersion, Parameters inParameters)
+		{
+			actionName = inActionName;
+			actionVersion = inActionVersion;
+			parameters = inParameters;
+		}
+
+		public String getActionName() { return actionName; }
+		public short getActionVersion() { return actionVersion; }
+		public Parameters getParameters() { return parameters; }
+	}
+
+	// ----- Instance members -------------------------------------------------
+	private List<Entry> entries = new ArrayList<Entry>();
+
+	public ActionRequestBatch(Locale inLocale, LoginToken inLoginToken)
+	{
+		super(inLocale, inLoginToken, null);
+	}
+
+	public ActionRequestBatch()
+	{
+		super();
+	}
+
+	public ActionRequestBatch add(String actionName, short actionVersion, Parameters parameters)
+	{
+		entries.add(new Entry(actionName, actionVersion, parameters));
+		return this;
+	}
+
+	public int size() { return entries.size(); }
+	public Entry getEntry(int index) { return entries.get(index); }
+	public List<Entry> getEntries() { return entries; }
+
+	public void reset()
+	{
+		super.reset();
+		entries.clear();
+	}
+
+	/**
+	 * @return the <code>index</code>th entry as an ordinary ActionRequest, with
+	 * the locale, login token, counter, times, correlation ID and timings of the batch.
+	 */
+	public ActionRequest toRequest(int index)
+	{
+		Entry entry = entries.get(index);
+		ActionRequest request = new ActionRequest(getLocale(), getLoginToken(),
+			entry.getParameters(), entry.getActionName(), entry.getActionVersion());
+		request.restore(getTxCounter(), getTimeCreated(), getTimeReceived());
+		request.setCorrelationId(getCorrelationId());
+		request.setTimings(getTimings());
+		return request;
+	}
+}
@@ -22,6 +22,9 @@ public class ActionResponse extends ActionCommunication implements Serializable
 
 	// ----- Instance members -------------------------------------------------
 	private List<ErrorReport> errorReports = null;
+	// One part of a chunked response, with more parts to follow; the last
+	// part (not partial) carries the error reports (see ChunkedResponseWriter)
+	private boolean partial = false;
 
 	public ActionResponse(Locale inLocale, LoginToken inLoginToken, 
 		Parameters inParameters, 
@@ -31,12 +34,27 @@ public class ActionResponse extends ActionCommunication implements Serializable
 		addErrorReports(inErrorReports);
 	}
 	
+	/**
+	 * Answers <code>request</code>: its locale, login token, correlation ID
+	 * and timings are echoed.
+	 */
+	public ActionResponse(ActionCommunication inRequest, Parameters inParameters, 
+		List<ErrorReport> inErrorReports)
+	{
+		this(inRequest.getLocale(), inRequest.getLoginToken(), inParameters, inErrorReports);
+		setCorrelationId(inRequest.getCorrelationId());
+		setTimings(inRequest.getTimings());
+	}
+
 	public ActionResponse()
 	{
 		super();
 		errorReports = null;
 	}
 
+	public boolean isPartial() { return partial; }
+	public void setPartial(boolean b) { partial = b; }
+
 	public boolean hasErrorReports()
 	{
 		return (errorReports != null && !errorReports.isEmpty());
@@ -64,4 +82,16 @@ public class ActionResponse extends ActionCommunication implements Serializable
 			return null;
 		return errorReports;
 	}
+
+	/**
+	 * Also drops the error reports (keeping the list for the next ones) and
+	 * the partial flag.
+	 */
+	public void reset()
+	{
+		super.reset();
+		if (errorReports != null)
+			errorReports.clear();
+		partial = false;
+	}
 }
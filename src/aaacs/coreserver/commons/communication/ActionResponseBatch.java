@@ -0,0 +1,122 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+
+/**
+ * The answer to an ActionRequestBatch: one entry per entry of the request, in
+ * the same order, each with its own parameters and error reports, sharing the
+ * locale, login token, transmission counter and times of the batch.
+ */
+public class ActionResponseBatch extends ActionCommunication implements Serializable
+{
+	// ----- Static Data Members ----------------------------------------------
+	/**
+	 * Serialization Version Number
+	 */
+	private static final long serialVersionUID = 1000L;
+
+	/**
+	 * The answer to one action of the batch.
+	 */
+	public static class Entry implements Serializable
+	{
+		private static final long serialVersionUID = 1000L;
+
+		private final Parameters parameters;
+		private final List<ErrorReport> errorReports;
+
+		public Entry(Parameters inParameters, List<ErrorReport> inErrorReports)
+		{
+			parameters = inParameters;
+			errorReports = (inErrorReports == null || inErrorReports.isEmpty() ?
+				null : new Vector<ErrorReport>(inErrorReports));
+		}
+
+		public Parameters getParameters() { return parameters; }
+
+		public boolean hasErrorReports() { return errorReports != null; }
+
+		/** @return the error reports, or null if there are none. */
+		public List<ErrorReport> getErrorReports() { return errorReports; }
+	}
+
+	// ----- Instance members -------------------------------------------------
+	private List<Entry> entries = new ArrayList<Entry>();
+
+	public ActionResponseBatch(Locale inLocale, LoginToken inLoginToken)
+	{
+		super(inLocale, inLoginToken, null);
+	}
+
+	/**
+	 * Starts the answer to <code>request</code>, with its locale, login token,
+	 * correlation ID and timings.
+	 */
+	public ActionResponseBatch(ActionRequestBatch request)
+	{
+		this(request.getLocale(), request.getLoginToken());
+		setCorrelationId(request.getCorrelationId());
+		setTimings(request.getTimings());
+	}
+
+	public ActionResponseBatch()
+	{
+		super();
+	}
+
+	public ActionResponseBatch add(Parameters parameters, List<ErrorReport> errorReports)
+	{
+		entries.add(new Entry(parameters, errorReports));
+		return this;
+	}
+
+	/**
+	 * Adds the answer of one action that was carried out as an ordinary
+	 * ActionRequest (see ActionRequestBatch.toRequest()).
+	 */
+	public ActionResponseBatch add(ActionResponse response)
+	{
+		return add(response.getParameters(),
+			response.hasErrorReports() ? response.getErrorReports() : null);
+	}
+
+	public int size() { return entries.size(); }
+	public Entry getEntry(int index) { return entries.get(index); }
+	public List<Entry> getEntries() { return entries; }
+
+	public void reset()
+	{
+		super.reset();
+		entries.clear();
+	}
+
+	/**
+	 * @return true if any of the entries has error reports
+	 */
+	public boolean hasErrorReports()
+	{
+		for (Entry entry : entries)
+			if (entry.hasErrorReports())
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the <code>index</code>th entry as an ordinary ActionResponse, with
+	 * the locale, login token, counter, times, correlation ID and timings of the batch.
+	 */
+	public ActionResponse toResponse(int index)
+	{
+		Entry entry = entries.get(index);
+		ActionResponse response = new ActionResponse(getLocale(), getLoginToken(),
+			entry.getParameters(), entry.getErrorReports());
+		response.restore(getTxCounter(), getTimeCreated(), getTimeReceived());
+		response.setCorrelationId(getCorrelationId());
+		response.setTimings(getTimings());
+		return response;
+	}
+}
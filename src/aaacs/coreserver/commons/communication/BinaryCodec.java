@@ -0,0 +1,1352 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import aaacs.coreserver.commons.utilities.Clock;
+import aaacs.coreserver.commons.validation.MsgArgsPair;
+
+/**
+ * A compact, versioned binary format for ActionRequests and ActionResponses,
+ * as an alternative to default Java serialization on the wire.
+ *
+ * A message starts with a magic number, the format version, and whether it is
+ * a request, a response, a part of a chunked response, or a batch of requests
+ * or responses (whose entries then share the header of the batch: locale,
+ * login token, counter and times). Every value is preceded by a one-byte tag naming
+ * its type, so the restricted set of types that Parameters accepts (the number
+ * wrappers, Boolean, String, Date, Timestamp, arrays of these or of primitives,
+ * Lists and Maps) needs no class descriptors at all. Integers and longs are
+ * written as variable-length numbers, and strings of up to 64 characters only
+ * once per message (see BinaryWriter). Nothing else is ever encoded, so that
+ * decoding only ever creates these types: an odd object among the arguments
+ * of an ErrorReport is written as its string (see writeArgument()), and Java
+ * serialization is never used, in either direction.
+ *
+ * Each parameter is written with the length of its value in front of it, and
+ * each value with a string table of its own. So a value can be decoded on its
+ * own, and decoded Parameters are lazy: a value is only decoded the first
+ * time it is asked for, and one that is never asked for is never decoded (nor
+ * checked for corruption). Until then, it keeps the buffer that was decoded
+ * from. Encoding a value that was never decoded simply copies its bytes.
+ *
+ * Binary (ByteBuffer) values are not copied when written (see
+ * BinaryWriter.writeShared()), nor when read: a decoded one is a read-only
+ * view of the buffer that was decoded.
+ *
+ * Lists and Maps keep their class when it is one of ArrayList, Vector,
+ * LinkedList, LinkedHashMap, HashMap, or a TreeMap in natural order; any other
+ * List arrives as an ArrayList, and any other Map as a LinkedHashMap (in the
+ * same iteration order). Arrays of Lists and Maps likewise keep their
+ * component class when it is ArrayList, HashMap or LinkedHashMap, whose
+ * elements always decode as instances of it; any other arrives as a List[]
+ * or a Map[] (see componentName()).
+ *
+ * Decoding never trusts a length, reference or nesting depth it reads: corrupt
+ * or truncated input ends with a StreamCorruptedException or EOFException.
+ */
+public class BinaryCodec
+{
+	// ----- Static members ---------------------------------------------------
+	public static final short MAGIC = (short) 0xAAC5;
+	// 2: parameter values have their own string tables; 3: correlation IDs;
+	// 4: timings
+	public static final byte VERSION = 4;
+
+	static final byte REQUEST = 1;
+	static final byte RESPONSE = 2;
+	static final byte REQUEST_BATCH = 3;
+	static final byte RESPONSE_BATCH = 4;
+	static final byte RESPONSE_PART = 5; // a partial ActionResponse
+
+	/**
+	 * How deeply values may be nested inside each other, in either direction.
+	 */
+	static final int MAXIMUM_DEPTH = 64;
+
+	// the largest frame readFrame() accepts, so that a bad length cannot make
+	// it allocate whatever it says
+	private static volatile int maximumFrameSize = 64 * 1024 * 1024;
+	public static int getMaximumFrameSize() { return maximumFrameSize; }
+	public static void setMaximumFrameSize(int size)
+	{
+		if (size < 1024)
+			maximumFrameSize = 1024; // minimum value: anything less is pointless
+		else
+			maximumFrameSize = size;
+	}
+
+	// ----- Value tags -------------------------------------------------------
+	static final byte NULL = 0;
+	static final byte BYTE = 1;
+	static final byte SHORT = 2;
+	static final byte INTEGER = 3;
+	static final byte LONG = 4;
+	static final byte FLOAT = 5;
+	static final byte DOUBLE = 6;
+	static final byte FALSE = 7;
+	static final byte TRUE = 8;
+	static final byte STRING = 9;
+	static final byte DATE = 10;
+	static final byte TIMESTAMP = 11;
+	static final byte BINARY = 12;
+
+	// arrays of the above: the tag of the element type plus ARRAY_OFFSET
+	static final byte ARRAY_OFFSET = 16;
+	static final byte BYTE_ARRAY = ARRAY_OFFSET + BYTE;
+	static final byte SHORT_ARRAY = ARRAY_OFFSET + SHORT;
+	static final byte INTEGER_ARRAY = ARRAY_OFFSET + INTEGER;
+	static final byte LONG_ARRAY = ARRAY_OFFSET + LONG;
+	static final byte FLOAT_ARRAY = ARRAY_OFFSET + FLOAT;
+	static final byte DOUBLE_ARRAY = ARRAY_OFFSET + DOUBLE;
+	static final byte BOOLEAN_ARRAY = ARRAY_OFFSET + TRUE;
+	static final byte STRING_ARRAY = ARRAY_OFFSET + STRING;
+	static final byte DATE_ARRAY = ARRAY_OFFSET + DATE;
+	static final byte TIMESTAMP_ARRAY = ARRAY_OFFSET + TIMESTAMP;
+	static final byte OBJECT_ARRAY = 28;
+
+	// primitive arrays: the tag of the element type plus PRIMITIVE_OFFSET
+	static final byte PRIMITIVE_OFFSET = 48;
+	static final byte BYTES = PRIMITIVE_OFFSET + BYTE;
+	static final byte SHORTS = PRIMITIVE_OFFSET + SHORT;
+	static final byte INTS = PRIMITIVE_OFFSET + INTEGER;
+	static final byte LONGS = PRIMITIVE_OFFSET + LONG;
+	static final byte FLOATS = PRIMITIVE_OFFSET + FLOAT;
+	static final byte DOUBLES = PRIMITIVE_OFFSET + DOUBLE;
+	static final byte BOOLEANS = PRIMITIVE_OFFSET + TRUE;
+
+	static final byte ARRAY_LIST = 32;
+	static final byte VECTOR = 33;
+	static final byte LINKED_LIST = 34;
+	static final byte LINKED_HASH_MAP = 40;
+	static final byte HASH_MAP = 41;
+	static final byte TREE_MAP = 42;
+
+	// once Java serialization, for odd values; no longer written nor accepted
+	static final byte SERIALIZED = 63;
+
+	// The component classes of object arrays, by name; no other class is ever
+	// named in a message, and a name read is never loaded as a class.
+	private static final Map<String, Class<?>> COMPONENTS = new HashMap<String, Class<?>>();
+	static
+	{
+		Class<?>[] components = { Object.class, Byte.class, Short.class,
+			Integer.class, Long.class, Float.class, Double.class, Boolean.class,
+			String.class, Date.class, Timestamp.class, List.class, Map.class,
+			ArrayList.class, HashMap.class, LinkedHashMap.class };
+		for (Class<?> component : components)
+			COMPONENTS.put(component.getName(), component);
+	}
+
+	// ----- Whole communications ---------------------------------------------
+	public static ByteBuffer encode(ActionRequest request) throws IOException
+	{
+		BinaryWriter out = new BinaryWriter();
+		encode(request, out);
+		return out.toByteBuffer();
+	}
+
+	public static ByteBuffer encode(ActionResponse response) throws IOException
+	{
+		BinaryWriter out = new BinaryWriter();
+		encode(response, out);
+		return out.toByteBuffer();
+	}
+
+	/**
+	 * Appends the request to whatever <code>out</code> holds already, which
+	 * lets a caller reuse one writer (and its buffer) for many messages.
+	 */
+	public static void encode(ActionRequest request, BinaryWriter out) throws IOException
+	{
+		writeHeader(out, REQUEST);
+		writeCommunication(out, request);
+		out.writeString(request.getActionName());
+		out.writeShort(request.getActionVersion());
+		writeTimings(out, request, Timings.Phase.SERIALIZED);
+	}
+
+	public static void encode(ActionResponse response, BinaryWriter out) throws IOException
+	{
+		writeHeader(out, response.isPartial() ? RESPONSE_PART : RESPONSE);
+		writeCommunication(out, response);
+		writeErrorReports(out, response.hasErrorReports() ? response.getErrorReports() : null);
+		writeTimings(out, response, Timings.Phase.RESPONSE_SERIALIZED);
+	}
+
+	public static ByteBuffer encode(ActionRequestBatch batch) throws IOException
+	{
+		BinaryWriter out = new BinaryWriter();
+		encode(batch, out);
+		return out.toByteBuffer();
+	}
+
+	public static ByteBuffer encode(ActionResponseBatch batch) throws IOException
+	{
+		BinaryWriter out = new BinaryWriter();
+		encode(batch, out);
+		return out.toByteBuffer();
+	}
+
+	/**
+	 * Writes the header of the batch once, then for each entry its action
+	 * name, version and parameters.
+	 */
+	public static void encode(ActionRequestBatch batch, BinaryWriter out) throws IOException
+	{
+		writeHeader(out, REQUEST_BATCH);
+		writeCommunication(out, batch);
+		out.writeVarInt(batch.size());
+		for (ActionRequestBatch.Entry entry : batch.getEntries())
+		{
+			out.writeString(entry.getActionName());
+			out.writeShort(entry.getActionVersion());
+			writeOptionalParameters(out, entry.getParameters());
+		}
+		writeTimings(out, batch, Timings.Phase.SERIALIZED);
+	}
+
+	public static void encode(ActionResponseBatch batch, BinaryWriter out) throws IOException
+	{
+		writeHeader(out, RESPONSE_BATCH);
+		writeCommunication(out, batch);
+		out.writeVarInt(batch.size());
+		for (ActionResponseBatch.Entry entry : batch.getEntries())
+		{
+			writeOptionalParameters(out, entry.getParameters());
+			writeErrorReports(out, entry.getErrorReports());
+		}
+		writeTimings(out, batch, Timings.Phase.RESPONSE_SERIALIZED);
+	}
+
+	/**
+	 * Encodes any kind of communication.
+	 */
+	static void encode(ActionCommunication communication, BinaryWriter out) throws IOException
+	{
+		if (communication instanceof ActionRequest)
+			encode((ActionRequest) communication, out);
+		else if (communication instanceof ActionResponse)
+			encode((ActionResponse) communication, out);
+		else if (communication instanceof ActionRequestBatch)
+			encode((ActionRequestBatch) communication, out);
+		else if (communication instanceof ActionResponseBatch)
+			encode((ActionResponseBatch) communication, out);
+		else
+			throw new IllegalArgumentException("communication.UnsupportedType");
+	}
+
+	/**
+	 * Decodes either kind of communication; the position of the buffer is left
+	 * untouched.
+	 */
+	public static ActionCommunication decode(ByteBuffer buffer) throws IOException
+	{
+		long start = Clock.getDefault().nanoTime();
+		BinaryReader in = new BinaryReader(buffer);
+		byte kind = readHeader(in);
+		if (kind == REQUEST)
+			return arrived(readRequest(in), start);
+		if (kind == RESPONSE || kind == RESPONSE_PART)
+			return arrived(readResponse(in, kind), start);
+		if (kind == REQUEST_BATCH)
+			return arrived(readRequestBatch(in), start);
+		if (kind == RESPONSE_BATCH)
+			return arrived(readResponseBatch(in), start);
+		throw new StreamCorruptedException("unknown kind of communication " + kind);
+	}
+
+	public static ActionRequest decodeRequest(ByteBuffer buffer) throws IOException
+	{
+		long start = Clock.getDefault().nanoTime();
+		BinaryReader in = new BinaryReader(buffer);
+		if (readHeader(in) != REQUEST)
+			throw new StreamCorruptedException("not an ActionRequest");
+		return arrived(readRequest(in), start);
+	}
+
+	public static ActionResponse decodeResponse(ByteBuffer buffer) throws IOException
+	{
+		long start = Clock.getDefault().nanoTime();
+		BinaryReader in = new BinaryReader(buffer);
+		byte kind = readHeader(in);
+		if (kind != RESPONSE && kind != RESPONSE_PART)
+			throw new StreamCorruptedException("not an ActionResponse");
+		return arrived(readResponse(in, kind), start);
+	}
+
+	public static ActionRequestBatch decodeRequestBatch(ByteBuffer buffer) throws IOException
+	{
+		long start = Clock.getDefault().nanoTime();
+		BinaryReader in = new BinaryReader(buffer);
+		if (readHeader(in) != REQUEST_BATCH)
+			throw new StreamCorruptedException("not an ActionRequestBatch");
+		return arrived(readRequestBatch(in), start);
+	}
+
+	public static ActionResponseBatch decodeResponseBatch(ByteBuffer buffer) throws IOException
+	{
+		long start = Clock.getDefault().nanoTime();
+		BinaryReader in = new BinaryReader(buffer);
+		if (readHeader(in) != RESPONSE_BATCH)
+			throw new StreamCorruptedException("not an ActionResponseBatch");
+		return arrived(readResponseBatch(in), start);
+	}
+
+	/**
+	 * Writes the communication preceded by its length, so that several can
+	 * follow each other on one stream.
+	 */
+	public static void writeFrame(DataOutputStream out, ActionCommunication communication)
+		throws IOException
+	{
+		BinaryWriter frame = new BinaryWriter();
+		encode(communication, frame);
+		out.writeInt(frame.size());
+		frame.writeTo(out);
+	}
+
+	/**
+	 * Reads what writeFrame() wrote, refusing frames larger than the maximum
+	 * frame size (see setMaximumFrameSize()).
+	 */
+	public static ActionCommunication readFrame(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+			throw new StreamCorruptedException("negative length");
+		if (length > maximumFrameSize)
+			throw new StreamCorruptedException("frame of " + length + " bytes is too large");
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return decode(ByteBuffer.wrap(frame));
+	}
+
+	/**
+	 * Marks the arrival of a decoded communication, if it is timed: a request
+	 * as RECEIVED (when decoding started, unless marked already) and
+	 * DESERIALIZED, a response as RESPONSE_RECEIVED.
+	 */
+	private static <T extends ActionCommunication> T arrived(T communication, long start)
+	{
+		Timings timings = communication.getTimings();
+		if (timings == null)
+			return communication;
+		if (communication instanceof ActionResponse || communication instanceof ActionResponseBatch)
+			timings.set(Timings.Phase.RESPONSE_RECEIVED, start);
+		else
+		{
+			if (!timings.isMarked(Timings.Phase.RECEIVED))
+				timings.set(Timings.Phase.RECEIVED, start);
+			timings.mark(Timings.Phase.DESERIALIZED);
+		}
+		return communication;
+	}
+
+	private static void writeHeader(BinaryWriter out, byte kind)
+	{
+		out.writeShort(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(kind);
+	}
+
+	private static byte readHeader(BinaryReader in) throws IOException
+	{
+		if (in.readShort() != MAGIC)
+			throw new StreamCorruptedException("not a binary action communication");
+		byte version = in.readByte();
+		if (version != VERSION)
+			throw new StreamCorruptedException("unsupported format version " + version);
+		return in.readByte();
+	}
+
+	private static void writeCommunication(BinaryWriter out, ActionCommunication communication)
+		throws IOException
+	{
+		Locale locale = communication.getLocale();
+		out.writeString(locale.getLanguage());
+		out.writeString(locale.getCountry());
+		out.writeString(locale.getVariant());
+		writeLoginToken(out, communication.getLoginToken());
+		out.writeByte(communication.getTxCounter());
+		out.writeLong(communication.getTimeCreated());
+		out.writeLong(communication.getTimeReceived());
+		out.writeVarLong(communication.getCorrelationId());
+		writeOptionalParameters(out, communication.getParameters());
+	}
+
+	private static void writeOptionalParameters(BinaryWriter out, Parameters parameters)
+		throws IOException
+	{
+		out.writeBoolean(parameters != null);
+		if (parameters != null)
+			writeParameters(out, parameters);
+	}
+
+	private static Parameters readOptionalParameters(BinaryReader in) throws IOException
+	{
+		return (in.readBoolean() ? readParameters(in) : null);
+	}
+
+	/**
+	 * Writes the timings, if any, after marking <code>phase</code>: which
+	 * phases are marked, then their marks.
+	 */
+	private static void writeTimings(BinaryWriter out, ActionCommunication communication,
+		Timings.Phase phase)
+	{
+		Timings timings = communication.getTimings();
+		if (timings == null)
+		{
+			out.writeVarInt(0);
+			return;
+		}
+		timings.mark(phase);
+		int marked = timings.getMarked();
+		out.writeVarInt(marked);
+		for (Timings.Phase p : Timings.Phase.values())
+			if (timings.isMarked(p))
+				out.writeLong(timings.getMark(p));
+	}
+
+	private static Timings readTimings(BinaryReader in) throws IOException
+	{
+		int marked = in.readVarInt();
+		if (marked == 0)
+			return null;
+		Timings.Phase[] phases = Timings.Phase.values();
+		if ((marked >>> phases.length) != 0)
+			throw new StreamCorruptedException("unknown timing phases " + marked);
+		Timings timings = new Timings();
+		for (Timings.Phase p : phases)
+			if ((marked & (1 << p.ordinal())) != 0)
+				timings.set(p, in.readLong());
+		return timings;
+	}
+
+	private static void writeErrorReports(BinaryWriter out, List<ErrorReport> reports)
+		throws IOException
+	{
+		if (reports == null)
+			out.writeVarInt(0);
+		else
+		{
+			out.writeVarInt(reports.size());
+			for (ErrorReport report : reports)
+				writeErrorReport(out, report);
+		}
+	}
+
+	/**
+	 * Reads what writeCommunication() wrote into a freshly created
+	 * communication.
+	 */
+	private static void readCommunication(BinaryReader in, ActionCommunication communication)
+		throws IOException
+	{
+		String language = in.readString();
+		String country = in.readString();
+		String variant = in.readString();
+		if (language == null || country == null || variant == null)
+			throw new StreamCorruptedException("bad locale");
+		communication.setLocale(new Locale(language, country, variant));
+		communication.setLoginToken(readLoginToken(in));
+		byte txCounter = in.readByte();
+		long timeCreated = in.readLong();
+		long timeReceived = in.readLong();
+		communication.restore(txCounter, timeCreated, timeReceived);
+		communication.setCorrelationId(in.readVarLong());
+		communication.setParameters(readOptionalParameters(in));
+	}
+
+	private static ActionRequest readRequest(BinaryReader in) throws IOException
+	{
+		ActionRequest request = CommunicationPool.acquireRequest();
+		readCommunication(in, request);
+		request.setActionName(in.readString());
+		request.setActionVersion(in.readShort());
+		request.setTimings(readTimings(in));
+		return request;
+	}
+
+	private static ActionResponse readResponse(BinaryReader in, byte kind) throws IOException
+	{
+		ActionResponse response = CommunicationPool.acquireResponse();
+		readCommunication(in, response);
+		response.setPartial(kind == RESPONSE_PART);
+		int count = in.readLength(1);
+		for (int i = 0; i < count; i++)
+			response.addErrorReport(readErrorReport(in));
+		response.setTimings(readTimings(in));
+		return response;
+	}
+
+	private static ActionRequestBatch readRequestBatch(BinaryReader in) throws IOException
+	{
+		ActionRequestBatch batch = new ActionRequestBatch();
+		readCommunication(in, batch);
+		int count = in.readLength(4); // name, version and flag
+		for (int i = 0; i < count; i++)
+		{
+			String actionName = in.readString();
+			short actionVersion = in.readShort();
+			batch.add(actionName, actionVersion, readOptionalParameters(in));
+		}
+		batch.setTimings(readTimings(in));
+		return batch;
+	}
+
+	private static ActionResponseBatch readResponseBatch(BinaryReader in) throws IOException
+	{
+		ActionResponseBatch batch = new ActionResponseBatch();
+		readCommunication(in, batch);
+		int count = in.readLength(2); // flag and number of reports
+		for (int i = 0; i < count; i++)
+		{
+			Parameters parameters = readOptionalParameters(in);
+			int reportCount = in.readLength(1);
+			List<ErrorReport> reports = (reportCount == 0 ? null : new ArrayList<ErrorReport>(reportCount));
+			for (int j = 0; j < reportCount; j++)
+				reports.add(readErrorReport(in));
+			batch.add(parameters, reports);
+		}
+		batch.setTimings(readTimings(in));
+		return batch;
+	}
+
+	// ----- Parts ------------------------------------------------------------
+	public static void writeLoginToken(BinaryWriter out, LoginToken token)
+	{
+		out.writeVarInt(token.getVersion());
+		out.writeSignedVarLong(token.getUserIdk());
+		out.writeLong(token.getTokenTime());
+	}
+
+	public static LoginToken readLoginToken(BinaryReader in) throws IOException
+	{
+		int version = in.readVarInt();
+		long userIdk = in.readSignedVarLong();
+		long tokenTime = in.readLong();
+		return new LoginToken(version, userIdk, tokenTime);
+	}
+
+	/**
+	 * Writes the parameters: their number, then for each one its name, the
+	 * length in bytes of its value, and the value.
+	 */
+	public static void writeParameters(BinaryWriter out, Parameters parameters)
+		throws IOException
+	{
+		ParameterMap storage = parameters.getStorage();
+		out.writeVarInt(storage.size());
+		for (int i = 0; i < storage.size(); i++)
+		{
+			out.writeString(storage.keyAt(i));
+			Object value = storage.valueAt(i);
+			if (value instanceof EncodedValue)
+			{
+				ByteBuffer bytes = ((EncodedValue) value).getBytes();
+				out.writeInt(bytes.remaining());
+				out.writeShared(bytes);
+				continue;
+			}
+			int lengthPosition = out.size();
+			out.writeInt(0);
+			out.beginScope();
+			writeValue(out, value);
+			out.endScope();
+			out.putInt(lengthPosition, out.size() - lengthPosition - 4);
+		}
+	}
+
+	/**
+	 * Reads parameters as they were written, without checking their types all
+	 * over again: the decoder only ever creates the types Parameters accepts.
+	 * The values are only decoded when first asked for (see decodeValue()).
+	 */
+	public static Parameters readParameters(BinaryReader in) throws IOException
+	{
+		return readParameters(in, CommunicationPool.acquireParameters());
+	}
+
+	/**
+	 * As above, but adds the parameters read to existing ones.
+	 */
+	public static Parameters readParameters(BinaryReader in, Parameters parameters)
+		throws IOException
+	{
+		ParameterMap storage = parameters.getStorage();
+		int count = in.readLength(6); // name, length and tag
+		for (int i = 0; i < count; i++)
+		{
+			String name = in.readString();
+			if (name == null)
+				throw new StreamCorruptedException("null parameter name");
+			int length = in.readInt();
+			if (length <= 0)
+				throw new StreamCorruptedException("bad length for parameter " + name);
+			storage.put(name, new EncodedValue(in.readSlice(length)));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Decodes one parameter value on its own.
+	 */
+	static Object decodeValue(ByteBuffer bytes) throws IOException
+	{
+		BinaryReader in = new BinaryReader(bytes);
+		in.beginScope();
+		Object value = readValue(in);
+		if (in.remaining() != 0)
+			throw new StreamCorruptedException("unexpected bytes after a parameter value");
+		return value;
+	}
+
+	public static void writeErrorReport(BinaryWriter out, ErrorReport report)
+		throws IOException
+	{
+		out.writeString(report.getSystem());
+		out.writeString(report.getSource() == null ? null : report.getSource().name());
+		out.writeString(report.getType());
+		out.writeSignedVarLong(report.getUserIdk());
+		out.writeString(report.getActionName());
+		out.writeShort(report.getActionVersion());
+		out.writeLong(report.getActionTime());
+
+		out.writeVarInt(report.getItems().size());
+		for (String item : report.getItems())
+		{
+			out.writeString(item);
+			writeArgument(out, report.getMessages(item));
+			writeArgument(out, report.getMessageArguments(item));
+			List<ThrowableSnapshot> chain = report.getThrowableChain(item);
+			if (chain == null)
+				out.writeVarInt(0);
+			else
+			{
+				out.writeVarInt(chain.size() + 1);
+				for (ThrowableSnapshot snapshot : chain)
+					writeThrowableSnapshot(out, snapshot);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static ErrorReport readErrorReport(BinaryReader in) throws IOException
+	{
+		String system = in.readString();
+		String sourceName = in.readString();
+		ErrorReport.Source source = null;
+		if (sourceName != null)
+		{
+			try
+			{
+				source = ErrorReport.Source.valueOf(sourceName);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new StreamCorruptedException("unknown error source " + sourceName);
+			}
+		}
+		ErrorReport report = new ErrorReport(system, source, in.readString(),
+			in.readSignedVarLong(), in.readString(), in.readShort(), in.readLong());
+
+		int items = in.readLength(3);
+		for (int i = 0; i < items; i++)
+		{
+			String item = in.readString();
+			List<String> msgs = (List<String>) readValue(in, List.class, 0);
+			List<Object[]> args = (List<Object[]>) readValue(in, List.class, 0);
+			report.addItem(item, msgs, args);
+			int chainLength = in.readLength(1);
+			if (chainLength > 0)
+			{
+				List<ThrowableSnapshot> chain = new Vector<ThrowableSnapshot>();
+				for (int j = 1; j < chainLength; j++)
+					chain.add(readThrowableSnapshot(in));
+				report.setThrowableChain(item, chain);
+			}
+		}
+		return report;
+	}
+
+	public static void writeThrowableSnapshot(BinaryWriter out, ThrowableSnapshot snapshot)
+		throws IOException
+	{
+		out.writeString(snapshot.getClassName());
+		out.writeString(snapshot.getMessage());
+		writeArgument(out, snapshot.getMessageArguments());
+		writeValue(out, snapshot.getStackTrace());
+		writeArgument(out, snapshot.getReasons());
+		writeArgument(out, snapshot.getReasonsArguments());
+		out.writeString(snapshot.getValidatedEntity());
+		out.writeString(snapshot.getValidationResourceFile());
+
+		Map<String, List<MsgArgsPair>> results = snapshot.getValidationResults();
+		if (results == null)
+			out.writeVarInt(0);
+		else
+		{
+			out.writeVarInt(results.size() + 1);
+			for (Map.Entry<String, List<MsgArgsPair>> entry : results.entrySet())
+			{
+				out.writeString(entry.getKey());
+				List<MsgArgsPair> pairs = entry.getValue();
+				if (pairs == null)
+				{
+					out.writeVarInt(0);
+					continue;
+				}
+				out.writeVarInt(pairs.size() + 1);
+				for (MsgArgsPair pair : pairs)
+					writeMsgArgsPair(out, pair);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static ThrowableSnapshot readThrowableSnapshot(BinaryReader in) throws IOException
+	{
+		ThrowableSnapshot snapshot = new ThrowableSnapshot();
+		snapshot.setClassName(in.readString());
+		snapshot.setMessage(in.readString());
+		snapshot.setMessageArguments((Object[]) readValue(in, Object[].class, 0));
+		snapshot.setStackTrace((String[]) readValue(in, String[].class, 0));
+		snapshot.setReasons((List<String>) readValue(in, List.class, 0));
+		snapshot.setReasonsArguments((List<Object[]>) readValue(in, List.class, 0));
+		snapshot.setValidatedEntity(in.readString());
+		snapshot.setValidationResourceFile(in.readString());
+
+		int results = in.readLength(1);
+		if (results > 0)
+		{
+			LinkedHashMap<String, List<MsgArgsPair>> map =
+				new LinkedHashMap<String, List<MsgArgsPair>>();
+			for (int i = 1; i < results; i++)
+			{
+				String key = in.readString();
+				int pairs = in.readLength(1);
+				List<MsgArgsPair> list = null;
+				if (pairs > 0)
+				{
+					list = new Vector<MsgArgsPair>();
+					for (int j = 1; j < pairs; j++)
+						list.add(readMsgArgsPair(in));
+				}
+				map.put(key, list);
+			}
+			snapshot.setValidationResults(map);
+		}
+		return snapshot;
+	}
+
+	public static void writeMsgArgsPair(BinaryWriter out, MsgArgsPair pair) throws IOException
+	{
+		out.writeString(pair.getMsg());
+		writeArgument(out, pair.getArgs());
+	}
+
+	/**
+	 * Writes message arguments (or lists of them), whatever their types: those
+	 * that cannot be encoded are written as their strings instead.
+	 */
+	private static void writeArgument(BinaryWriter out, Object value) throws IOException
+	{
+		writeValue(out, encodable(value, 0));
+	}
+
+	/**
+	 * @return the value if it can be encoded, or else a copy of it in which
+	 * whatever cannot be encoded was replaced by its string
+	 */
+	private static Object encodable(Object value, int depth)
+	{
+		if (value == null || depth > MAXIMUM_DEPTH) // writeValue() will refuse the latter
+			return value;
+		Class<?> c = value.getClass();
+		if (value instanceof Object[])
+		{
+			Object[] array = (Object[]) value;
+			if (arrayTag(c.getComponentType()) != OBJECT_ARRAY)
+				return array;
+			Object[] copy = new Object[array.length];
+			for (int i = 0; i < array.length; i++)
+				copy[i] = encodable(array[i], depth + 1);
+			return copy;
+		}
+		if (value instanceof List)
+		{
+			List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+			for (Object element : (List<?>) value)
+				copy.add(encodable(element, depth + 1));
+			return copy;
+		}
+		if (value instanceof Map)
+		{
+			Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				copy.put(encodable(entry.getKey(), depth + 1), encodable(entry.getValue(), depth + 1));
+			return copy;
+		}
+		if ((c.isArray() && c != char[].class) || value instanceof ByteBuffer ||
+			(c != Object.class && arrayTag(c) != OBJECT_ARRAY))
+			return value;
+		return (c == char[].class ? new String((char[]) value) : String.valueOf(value));
+	}
+
+	public static MsgArgsPair readMsgArgsPair(BinaryReader in) throws IOException
+	{
+		String msg = in.readString();
+		return new MsgArgsPair(msg, (Object[]) readValue(in, Object[].class, 0));
+	}
+
+	// ----- Values -----------------------------------------------------------
+	public static void writeValue(BinaryWriter out, Object value) throws IOException
+	{
+		writeValue(out, value, 0);
+	}
+
+	public static Object readValue(BinaryReader in) throws IOException
+	{
+		return readValue(in, Object.class, 0);
+	}
+
+	private static void writeValue(BinaryWriter out, Object value, int depth) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte(NULL);
+			return;
+		}
+		if (depth > MAXIMUM_DEPTH)
+			throw new IOException("value nested too deeply to be encoded");
+
+		Class<?> c = value.getClass();
+		if (c == String.class)
+		{
+			out.writeByte(STRING);
+			out.writeString((String) value);
+		}
+		else if (c == Integer.class)
+		{
+			out.writeByte(INTEGER);
+			out.writeSignedVarInt((Integer) value);
+		}
+		else if (c == Long.class)
+		{
+			out.writeByte(LONG);
+			out.writeSignedVarLong((Long) value);
+		}
+		else if (c == Boolean.class)
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		else if (c == Double.class)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (c == Timestamp.class)
+		{
+			out.writeByte(TIMESTAMP);
+			writeTimestamp(out, (Timestamp) value);
+		}
+		else if (c == Date.class)
+		{
+			out.writeByte(DATE);
+			out.writeSignedVarLong(((Date) value).getTime());
+		}
+		else if (c == Short.class)
+		{
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (c == Byte.class)
+		{
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (c == Float.class)
+		{
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Object[])
+			writeArray(out, (Object[]) value, depth);
+		else if (c.isArray() && c.getComponentType().isPrimitive())
+			writePrimitiveArray(out, value);
+		else if (value instanceof ByteBuffer)
+		{
+			ByteBuffer binary = (ByteBuffer) value;
+			out.writeByte(BINARY);
+			out.writeVarInt(binary.remaining());
+			out.writeShared(binary);
+		}
+		else if (value instanceof List)
+		{
+			out.writeByte(c == Vector.class ? VECTOR : c == LinkedList.class ? LINKED_LIST : ARRAY_LIST);
+			writeElements(out, (List<?>) value, depth);
+		}
+		else if (value instanceof Map)
+			writeMap(out, (Map<?, ?>) value, depth);
+		else
+			throw new IOException("cannot encode a " + c.getName());
+	}
+
+	private static void writeArray(BinaryWriter out, Object[] array, int depth) throws IOException
+	{
+		byte tag = arrayTag(array.getClass().getComponentType());
+		out.writeByte(tag);
+		if (tag == OBJECT_ARRAY)
+		{
+			Class<?> component = array.getClass().getComponentType();
+			out.writeString(component == Object.class ? null : componentName(component));
+			out.writeVarInt(array.length);
+			for (Object element : array)
+				writeValue(out, element, depth + 1);
+			return;
+		}
+
+		// The elements of the basic types are written without tags, after a
+		// bitmap of the null elements (if there are any).
+		out.writeVarInt(array.length);
+		writeNulls(out, array);
+		for (Object element : array)
+		{
+			if (element == null)
+				continue;
+			switch (tag)
+			{
+				case BYTE_ARRAY: out.writeByte((Byte) element); break;
+				case SHORT_ARRAY: out.writeShort((Short) element); break;
+				case INTEGER_ARRAY: out.writeSignedVarInt((Integer) element); break;
+				case LONG_ARRAY: out.writeSignedVarLong((Long) element); break;
+				case FLOAT_ARRAY: out.writeFloat((Float) element); break;
+				case DOUBLE_ARRAY: out.writeDouble((Double) element); break;
+				case BOOLEAN_ARRAY: out.writeBoolean((Boolean) element); break;
+				case STRING_ARRAY: out.writeString((String) element); break;
+				case DATE_ARRAY: out.writeSignedVarLong(((Date) element).getTime()); break;
+				default: writeTimestamp(out, (Timestamp) element);
+			}
+		}
+	}
+
+	/**
+	 * Primitive arrays are written as their length and then the bare elements:
+	 * ints and longs as variable-length numbers, booleans as a bitmap.
+	 */
+	private static void writePrimitiveArray(BinaryWriter out, Object array) throws IOException
+	{
+		if (array instanceof long[])
+		{
+			long[] longs = (long[]) array;
+			out.writeByte(LONGS);
+			out.writeVarInt(longs.length);
+			for (long v : longs)
+				out.writeSignedVarLong(v);
+		}
+		else if (array instanceof int[])
+		{
+			int[] ints = (int[]) array;
+			out.writeByte(INTS);
+			out.writeVarInt(ints.length);
+			for (int v : ints)
+				out.writeSignedVarInt(v);
+		}
+		else if (array instanceof double[])
+		{
+			double[] doubles = (double[]) array;
+			out.writeByte(DOUBLES);
+			out.writeVarInt(doubles.length);
+			for (double v : doubles)
+				out.writeDouble(v);
+		}
+		else if (array instanceof byte[])
+		{
+			byte[] bytes = (byte[]) array;
+			out.writeByte(BYTES);
+			out.writeVarInt(bytes.length);
+			out.write(bytes);
+		}
+		else if (array instanceof short[])
+		{
+			short[] shorts = (short[]) array;
+			out.writeByte(SHORTS);
+			out.writeVarInt(shorts.length);
+			for (short v : shorts)
+				out.writeShort(v);
+		}
+		else if (array instanceof float[])
+		{
+			float[] floats = (float[]) array;
+			out.writeByte(FLOATS);
+			out.writeVarInt(floats.length);
+			for (float v : floats)
+				out.writeFloat(v);
+		}
+		else if (array instanceof boolean[])
+		{
+			boolean[] booleans = (boolean[]) array;
+			out.writeByte(BOOLEANS);
+			out.writeVarInt(booleans.length);
+			byte[] bitmap = new byte[(booleans.length + 7) / 8];
+			for (int i = 0; i < booleans.length; i++)
+				if (booleans[i])
+					bitmap[i >> 3] |= 1 << (i & 7);
+			out.write(bitmap);
+		}
+		else // char[]
+			throw new IOException("cannot encode a char[]");
+	}
+
+	/**
+	 * @return the name an object array of the component class is written
+	 * with: that of the class if it is one of the COMPONENTS, or else of the
+	 * List or Map interface it implements (arrays of arrays likewise)
+	 */
+	private static String componentName(Class<?> component) throws IOException
+	{
+		if (component.isArray())
+		{
+			String name = componentName(component.getComponentType());
+			return "[" + (name.startsWith("[") ? name : "L" + name + ";");
+		}
+		if (COMPONENTS.get(component.getName()) == component)
+			return component.getName();
+		if (List.class.isAssignableFrom(component))
+			return List.class.getName();
+		if (Map.class.isAssignableFrom(component))
+			return Map.class.getName();
+		throw new IOException("cannot encode an array of " + component.getName());
+	}
+
+	/**
+	 * @return the component class componentName() wrote the name of, looked
+	 * up among the COMPONENTS
+	 */
+	private static Class<?> componentClass(String name) throws IOException
+	{
+		int dimensions = 0;
+		while (dimensions < name.length() && name.charAt(dimensions) == '[')
+			dimensions++;
+		String elementName = name;
+		if (dimensions > 0)
+		{
+			if (dimensions > MAXIMUM_DEPTH || !name.endsWith(";") ||
+				name.length() < dimensions + 2 || name.charAt(dimensions) != 'L')
+				throw new StreamCorruptedException("unsupported array type " + name);
+			elementName = name.substring(dimensions + 1, name.length() - 1);
+		}
+		Class<?> component = COMPONENTS.get(elementName);
+		if (component == null)
+			throw new StreamCorruptedException("unsupported array type " + name);
+		for (int i = 0; i < dimensions; i++)
+			component = Array.newInstance(component, 0).getClass();
+		return component;
+	}
+
+	private static byte arrayTag(Class<?> component)
+	{
+		if (component == String.class) return STRING_ARRAY;
+		if (component == Integer.class) return INTEGER_ARRAY;
+		if (component == Long.class) return LONG_ARRAY;
+		if (component == Double.class) return DOUBLE_ARRAY;
+		if (component == Boolean.class) return BOOLEAN_ARRAY;
+		if (component == Timestamp.class) return TIMESTAMP_ARRAY;
+		if (component == Date.class) return DATE_ARRAY;
+		if (component == Short.class) return SHORT_ARRAY;
+		if (component == Byte.class) return BYTE_ARRAY;
+		if (component == Float.class) return FLOAT_ARRAY;
+		return OBJECT_ARRAY;
+	}
+
+	/**
+	 * Writes 0 if there are no null elements, otherwise 1 and a bitmap of them.
+	 */
+	private static void writeNulls(BinaryWriter out, Object[] array)
+	{
+		int i = 0;
+		while (i < array.length && array[i] != null)
+			i++;
+		if (i == array.length)
+		{
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		byte[] bitmap = new byte[(array.length + 7) / 8];
+		for (; i < array.length; i++)
+			if (array[i] == null)
+				bitmap[i >> 3] |= 1 << (i & 7);
+		out.write(bitmap);
+	}
+
+	private static void writeElements(BinaryWriter out, Collection<?> elements, int depth)
+		throws IOException
+	{
+		out.writeVarInt(elements.size());
+		for (Object element : elements)
+			writeValue(out, element, depth + 1);
+	}
+
+	private static void writeMap(BinaryWriter out, Map<?, ?> map, int depth) throws IOException
+	{
+		Class<?> c = map.getClass();
+		if (c == HashMap.class)
+			out.writeByte(HASH_MAP);
+		else if (c == TreeMap.class && ((TreeMap<?, ?>) map).comparator() == null)
+			out.writeByte(TREE_MAP);
+		else
+			out.writeByte(LINKED_HASH_MAP);
+		out.writeVarInt(map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet())
+		{
+			writeValue(out, entry.getKey(), depth + 1);
+			writeValue(out, entry.getValue(), depth + 1);
+		}
+	}
+
+	private static void writeTimestamp(BinaryWriter out, Timestamp timestamp)
+	{
+		out.writeSignedVarLong(timestamp.getTime());
+		out.writeVarInt(timestamp.getNanos());
+	}
+
+	/**
+	 * Reads a value, which must turn out to be null or an instance of
+	 * <code>expected</code>.
+	 */
+	private static Object readValue(BinaryReader in, Class<?> expected, int depth)
+		throws IOException
+	{
+		if (depth > MAXIMUM_DEPTH)
+			throw new StreamCorruptedException("values nested too deeply");
+
+		byte tag = in.readByte();
+		Object value;
+		switch (tag)
+		{
+			case NULL: return null;
+			case BYTE: value = in.readByte(); break;
+			case SHORT: value = in.readShort(); break;
+			case INTEGER: value = in.readSignedVarInt(); break;
+			case LONG: value = in.readSignedVarLong(); break;
+			case FLOAT: value = in.readFloat(); break;
+			case DOUBLE: value = in.readDouble(); break;
+			case FALSE: value = Boolean.FALSE; break;
+			case TRUE: value = Boolean.TRUE; break;
+			case STRING:
+				value = in.readString();
+				if (value == null)
+					throw new StreamCorruptedException("null string value");
+				break;
+			case DATE: value = new Date(in.readSignedVarLong()); break;
+			case TIMESTAMP: value = readTimestamp(in); break;
+			case BINARY: value = in.readSlice(in.readLength(1)); break;
+			case BYTE_ARRAY: case SHORT_ARRAY: case INTEGER_ARRAY: case LONG_ARRAY:
+			case FLOAT_ARRAY: case DOUBLE_ARRAY: case BOOLEAN_ARRAY: case STRING_ARRAY:
+			case DATE_ARRAY: case TIMESTAMP_ARRAY:
+				value = readBasicArray(in, tag);
+				break;
+			case OBJECT_ARRAY: value = readObjectArray(in, depth); break;
+			case BYTES: case SHORTS: case INTS: case LONGS:
+			case FLOATS: case DOUBLES: case BOOLEANS:
+				value = readPrimitiveArray(in, tag);
+				break;
+			case ARRAY_LIST: case VECTOR: case LINKED_LIST:
+			{
+				int length = in.readLength(1);
+				List<Object> list = (tag == VECTOR ? new Vector<Object>(length) :
+					tag == LINKED_LIST ? new LinkedList<Object>() : new ArrayList<Object>(length));
+				for (int i = 0; i < length; i++)
+					list.add(readValue(in, Object.class, depth + 1));
+				value = list;
+				break;
+			}
+			case LINKED_HASH_MAP: case HASH_MAP: case TREE_MAP:
+			{
+				int size = in.readLength(2);
+				Map<Object, Object> map = (tag == HASH_MAP ? new HashMap<Object, Object>(size * 4 / 3 + 1) :
+					tag == TREE_MAP ? new TreeMap<Object, Object>() :
+					new LinkedHashMap<Object, Object>(size * 4 / 3 + 1));
+				for (int i = 0; i < size; i++)
+				{
+					Object key = readValue(in, Object.class, depth + 1);
+					try
+					{
+						map.put(key, readValue(in, Object.class, depth + 1));
+					}
+					catch (RuntimeException e) // e.g. keys a TreeMap cannot compare
+					{
+						throw new StreamCorruptedException("bad map key " + key);
+					}
+				}
+				value = map;
+				break;
+			}
+			case SERIALIZED: throw new StreamCorruptedException("serialized values are not accepted");
+			default: throw new StreamCorruptedException("unknown value tag " + tag);
+		}
+		if (!expected.isInstance(value))
+			throw new StreamCorruptedException("expected a " + expected.getName() +
+				" but found a " + value.getClass().getName());
+		return value;
+	}
+
+	private static Object[] readBasicArray(BinaryReader in, byte tag) throws IOException
+	{
+		int length = in.readVarInt();
+		boolean[] nulls = readNulls(in, length);
+		Object[] array;
+		switch (tag)
+		{
+			case BYTE_ARRAY: array = new Byte[length]; break;
+			case SHORT_ARRAY: array = new Short[length]; break;
+			case INTEGER_ARRAY: array = new Integer[length]; break;
+			case LONG_ARRAY: array = new Long[length]; break;
+			case FLOAT_ARRAY: array = new Float[length]; break;
+			case DOUBLE_ARRAY: array = new Double[length]; break;
+			case BOOLEAN_ARRAY: array = new Boolean[length]; break;
+			case STRING_ARRAY: array = new String[length]; break;
+			case DATE_ARRAY: array = new Date[length]; break;
+			default: array = new Timestamp[length];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (nulls != null && nulls[i])
+				continue;
+			switch (tag)
+			{
+				case BYTE_ARRAY: array[i] = in.readByte(); break;
+				case SHORT_ARRAY: array[i] = in.readShort(); break;
+				case INTEGER_ARRAY: array[i] = in.readSignedVarInt(); break;
+				case LONG_ARRAY: array[i] = in.readSignedVarLong(); break;
+				case FLOAT_ARRAY: array[i] = in.readFloat(); break;
+				case DOUBLE_ARRAY: array[i] = in.readDouble(); break;
+				case BOOLEAN_ARRAY: array[i] = in.readBoolean(); break;
+				case STRING_ARRAY: array[i] = in.readString(); break;
+				case DATE_ARRAY: array[i] = new Date(in.readSignedVarLong()); break;
+				default: array[i] = readTimestamp(in);
+			}
+		}
+		return array;
+	}
+
+	/**
+	 * Reads the null bitmap of an array of <code>length</code> elements, also
+	 * making sure that there is enough left to read for such an array: each
+	 * element that is not null takes at least one byte.
+	 */
+	private static Object readPrimitiveArray(BinaryReader in, byte tag) throws IOException
+	{
+		switch (tag)
+		{
+			case LONGS:
+			{
+				long[] longs = new long[in.readLength(1)];
+				for (int i = 0; i < longs.length; i++)
+					longs[i] = in.readSignedVarLong();
+				return longs;
+			}
+			case INTS:
+			{
+				int[] ints = new int[in.readLength(1)];
+				for (int i = 0; i < ints.length; i++)
+					ints[i] = in.readSignedVarInt();
+				return ints;
+			}
+			case DOUBLES:
+			{
+				double[] doubles = new double[in.readLength(8)];
+				for (int i = 0; i < doubles.length; i++)
+					doubles[i] = in.readDouble();
+				return doubles;
+			}
+			case BYTES:
+			{
+				byte[] bytes = new byte[in.readLength(1)];
+				in.readFully(bytes);
+				return bytes;
+			}
+			case SHORTS:
+			{
+				short[] shorts = new short[in.readLength(2)];
+				for (int i = 0; i < shorts.length; i++)
+					shorts[i] = in.readShort();
+				return shorts;
+			}
+			case FLOATS:
+			{
+				float[] floats = new float[in.readLength(4)];
+				for (int i = 0; i < floats.length; i++)
+					floats[i] = in.readFloat();
+				return floats;
+			}
+			default:
+			{
+				int length = in.readVarInt();
+				if (length < 0 || (length + 7) / 8 > in.remaining())
+					throw new StreamCorruptedException("impossible length " + length);
+				byte[] bitmap = new byte[(length + 7) / 8];
+				in.readFully(bitmap);
+				boolean[] booleans = new boolean[length];
+				for (int i = 0; i < length; i++)
+					booleans[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+				return booleans;
+			}
+		}
+	}
+
+	private static boolean[] readNulls(BinaryReader in, int length) throws IOException
+	{
+		byte hasNulls = in.readByte();
+		if (length < 0 || (hasNulls == 0 ? length : (length + 7) / 8) > in.remaining())
+			throw new StreamCorruptedException("impossible length " + length);
+		if (hasNulls == 0)
+			return null;
+		if (hasNulls != 1)
+			throw new StreamCorruptedException("bad null bitmap");
+		byte[] bitmap = new byte[(length + 7) / 8];
+		in.readFully(bitmap);
+		boolean[] nulls = new boolean[length];
+		for (int i = 0; i < length; i++)
+			nulls[i] = (bitmap[i >> 3] & (1 << (i & 7))) != 0;
+		return nulls;
+	}
+
+	private static Object[] readObjectArray(BinaryReader in, int depth) throws IOException
+	{
+		String componentName = in.readString();
+		Class<?> component = (componentName == null ? Object.class : componentClass(componentName));
+		int length = in.readLength(1);
+		Object[] array = (Object[]) Array.newInstance(component, length);
+		for (int i = 0; i < length; i++)
+			array[i] = readValue(in, component, depth + 1);
+		return array;
+	}
+
+	private static Timestamp readTimestamp(BinaryReader in) throws IOException
+	{
+		Timestamp timestamp = new Timestamp(in.readSignedVarLong());
+		int nanos = in.readVarInt();
+		if (nanos < 0 || nanos > 999999999)
+			throw new StreamCorruptedException("bad timestamp");
+		timestamp.setNanos(nanos);
+		return timestamp;
+	}
+}
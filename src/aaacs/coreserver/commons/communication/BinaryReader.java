@@ -0,0 +1,248 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what a BinaryWriter wrote, straight out of a ByteBuffer (heap or
+ * direct). Running out of bytes is reported with an EOFException, and
+ * impossible lengths or references with a StreamCorruptedException, so that a
+ * truncated or garbled message can never cause anything worse.
+ *
+ * A reader is not thread-safe, and it does not change the position of the
+ * buffer it was given.
+ */
+public class BinaryReader implements DataInput
+{
+	// ----- Instance members -------------------------------------------------
+	private ByteBuffer buffer;
+	private List<String> strings = new ArrayList<String>();
+	private List<String> outerStrings = new ArrayList<String>();
+	private boolean inScope = false;
+
+	public BinaryReader(ByteBuffer buffer)
+	{
+		reset(buffer);
+	}
+
+	public BinaryReader(byte[] bytes)
+	{
+		this(ByteBuffer.wrap(bytes));
+	}
+
+	// ----- Management methods -----------------------------------------------
+	/**
+	 * Starts reading another message (forgetting the string table).
+	 */
+	public BinaryReader reset(ByteBuffer buffer)
+	{
+		this.buffer = buffer.slice();
+		if (inScope)
+			endScope();
+		strings.clear();
+		return this;
+	}
+
+	public int position() { return buffer.position(); }
+	public int remaining() { return buffer.remaining(); }
+
+	/**
+	 * @return the next <code>length</code> bytes as a read-only buffer sharing
+	 * the contents of the buffer being read, skipping over them.
+	 */
+	public ByteBuffer readSlice(int length) throws IOException
+	{
+		need(length);
+		ByteBuffer slice = buffer.slice();
+		slice.limit(length);
+		buffer.position(buffer.position() + length);
+		return slice.asReadOnlyBuffer();
+	}
+
+	private void need(int n) throws IOException
+	{
+		if (n < 0)
+			throw new StreamCorruptedException("negative length");
+		if (buffer.remaining() < n)
+			throw new EOFException();
+	}
+
+	// ----- DataInput --------------------------------------------------------
+	public void readFully(byte[] b) throws IOException { readFully(b, 0, b.length); }
+	public void readFully(byte[] b, int off, int len) throws IOException { need(len); buffer.get(b, off, len); }
+
+	public int skipBytes(int n)
+	{
+		int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	public boolean readBoolean() throws IOException { return readByte() != 0; }
+	public byte readByte() throws IOException { need(1); return buffer.get(); }
+	public int readUnsignedByte() throws IOException { return readByte() & 0xFF; }
+	public short readShort() throws IOException { need(2); return buffer.getShort(); }
+	public int readUnsignedShort() throws IOException { return readShort() & 0xFFFF; }
+	public char readChar() throws IOException { need(2); return buffer.getChar(); }
+	public int readInt() throws IOException { need(4); return buffer.getInt(); }
+	public long readLong() throws IOException { need(8); return buffer.getLong(); }
+	public float readFloat() throws IOException { need(4); return buffer.getFloat(); }
+	public double readDouble() throws IOException { need(8); return buffer.getDouble(); }
+
+	public String readLine() throws IOException
+	{
+		if (!buffer.hasRemaining())
+			return null;
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining())
+		{
+			char c = (char) (buffer.get() & 0xFF);
+			if (c == '\n')
+				break;
+			if (c == '\r')
+			{
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+					buffer.get();
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	public String readUTF() throws IOException
+	{
+		return DataInputStream.readUTF(this);
+	}
+
+	// ----- Compact forms ----------------------------------------------------
+	public int readVarInt() throws IOException
+	{
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			byte b = readByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new StreamCorruptedException("malformed variable-length int");
+	}
+
+	public long readVarLong() throws IOException
+	{
+		long v = 0;
+		for (int shift = 0; shift < 70; shift += 7)
+		{
+			byte b = readByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new StreamCorruptedException("malformed variable-length long");
+	}
+
+	public int readSignedVarInt() throws IOException
+	{
+		int v = readVarInt();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	public long readSignedVarLong() throws IOException
+	{
+		long v = readVarLong();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Reads a length or count, which can never be more than what is left to be
+	 * read divided by the minimum size of one of its items.
+	 */
+	public int readLength(int minimumItemSize) throws IOException
+	{
+		int length = readVarInt();
+		if (length < 0 || (long) length * minimumItemSize > buffer.remaining())
+			throw new StreamCorruptedException("impossible length " + length);
+		return length;
+	}
+
+	/**
+	 * Mirrors BinaryWriter.beginScope(): what follows has a string table of its
+	 * own.
+	 */
+	public void beginScope()
+	{
+		if (inScope) throw new IllegalStateException("scope already begun");
+		List<String> swap = outerStrings;
+		outerStrings = strings;
+		strings = swap;
+		strings.clear();
+		inScope = true;
+	}
+
+	public void endScope()
+	{
+		if (!inScope) throw new IllegalStateException("no scope begun");
+		List<String> swap = strings;
+		strings = outerStrings;
+		outerStrings = swap;
+		inScope = false;
+	}
+
+	/**
+	 * Reads a string written by <code>BinaryWriter.writeString()</code>.
+	 */
+	public String readString() throws IOException
+	{
+		int header = readVarInt();
+		if (header == 0)
+			return null;
+		if (header != 1)
+		{
+			int reference = header - 2;
+			if (reference < 0 || reference >= strings.size())
+				throw new StreamCorruptedException("bad string reference " + reference);
+			return strings.get(reference);
+		}
+
+		int length = readLength(1);
+		String s;
+		if (buffer.hasArray())
+		{
+			byte[] array = buffer.array();
+			int start = buffer.arrayOffset() + buffer.position();
+			s = decode(array, start, length);
+		}
+		else
+		{
+			byte[] bytes = new byte[length];
+			buffer.duplicate().get(bytes);
+			s = decode(bytes, 0, length);
+		}
+		buffer.position(buffer.position() + length);
+
+		if (s.length() <= BinaryWriter.MAXIMUM_SHARED_STRING_LENGTH)
+			strings.add(s);
+		return s;
+	}
+
+	private static String decode(byte[] bytes, int start, int length)
+	{
+		int end = start + length;
+		for (int i = start; i < end; i++)
+			if (bytes[i] < 0)
+				return new String(bytes, start, length, BinaryWriter.UTF8);
+
+		// plain ASCII, by far the most common case
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char) bytes[start + i];
+		return new String(chars);
+	}
+}
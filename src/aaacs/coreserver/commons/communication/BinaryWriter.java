@@ -0,0 +1,410 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the binary wire format (see BinaryCodec) into a growable, heap-based
+ * ByteBuffer. Besides the usual DataOutput methods, it writes variable-length
+ * integers and strings that are only spelled out the first time: repeated
+ * strings (parameter names, map keys, message keys) are written as a
+ * reference to their first occurrence.
+ *
+ * Large ByteBuffers given to <code>writeShared()</code> are not copied: the
+ * writer only remembers where they go, and <code>writeTo()</code> hands them
+ * to the channel as they are, between the bytes written around them.
+ *
+ * A writer is not thread-safe. It can be reused for one message after another
+ * by calling <code>reset()</code>, which keeps the buffer allocated.
+ */
+public class BinaryWriter implements DataOutput
+{
+	// ----- Static members ---------------------------------------------------
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Only strings up to this length are remembered for back-references;
+	 * longer ones are unlikely to repeat and would only bloat the table.
+	 */
+	static final int MAXIMUM_SHARED_STRING_LENGTH = 64;
+
+	/**
+	 * Buffers smaller than this are copied by <code>writeShared()</code> after
+	 * all; keeping track of them would cost more than copying them.
+	 */
+	static final int MINIMUM_SHARED_BUFFER_SIZE = 4096;
+
+	// ----- Instance members -------------------------------------------------
+	private ByteBuffer buffer;
+	private Map<String, Integer> strings = new HashMap<String, Integer>();
+	private Map<String, Integer> outerStrings = new HashMap<String, Integer>();
+	private boolean inScope = false;
+	// the buffers written by reference, and where in the buffer they belong
+	private final List<ByteBuffer> shared = new ArrayList<ByteBuffer>();
+	private final List<Integer> sharedAt = new ArrayList<Integer>();
+	private int sharedSize = 0;
+
+	public BinaryWriter(int initialCapacity)
+	{
+		buffer = ByteBuffer.allocate(initialCapacity < 64 ? 64 : initialCapacity);
+	}
+
+	public BinaryWriter()
+	{
+		this(1024);
+	}
+
+	// ----- Management methods -----------------------------------------------
+	/**
+	 * Forgets everything written so far (and the string table), making the
+	 * writer ready for the next message.
+	 */
+	public BinaryWriter reset()
+	{
+		buffer.clear();
+		if (inScope)
+			endScope();
+		strings.clear();
+		shared.clear();
+		sharedAt.clear();
+		sharedSize = 0;
+		return this;
+	}
+
+	/** @return the number of bytes written so far. */
+	public int size() { return buffer.position() + sharedSize; }
+
+	/**
+	 * @return a read-only view of the bytes written so far. The view shares
+	 * its contents with this writer, so it must be consumed before the writer
+	 * is reset or written to again. (If shared buffers were written, they are
+	 * copied into a new buffer after all.)
+	 */
+	public ByteBuffer toByteBuffer()
+	{
+		if (!shared.isEmpty())
+			return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+		ByteBuffer view = buffer.duplicate();
+		view.flip();
+		return view.asReadOnlyBuffer();
+	}
+
+	/** @return a copy of the bytes written so far. */
+	public byte[] toByteArray()
+	{
+		ByteBuffer bytes = ByteBuffer.allocate(size());
+		for (ByteBuffer piece : pieces())
+			bytes.put(piece);
+		return bytes.array();
+	}
+
+	/**
+	 * Writes all the bytes written so far to a channel, including shared
+	 * buffers, which are not copied. A gathering channel gets everything in as
+	 * few calls as it takes.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException
+	{
+		ByteBuffer[] pieces = pieces();
+		if (channel instanceof GatheringByteChannel)
+		{
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			int first = 0;
+			while (first < pieces.length)
+			{
+				gathering.write(pieces, first, pieces.length - first);
+				while (first < pieces.length && !pieces[first].hasRemaining())
+					first++;
+			}
+		}
+		else
+		{
+			for (ByteBuffer piece : pieces)
+				while (piece.hasRemaining())
+					channel.write(piece);
+		}
+	}
+
+	/**
+	 * The same for a plain OutputStream, which gets the bytes of heap buffers
+	 * straight from their arrays.
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		for (ByteBuffer piece : pieces())
+		{
+			if (piece.hasArray())
+				out.write(piece.array(), piece.arrayOffset() + piece.position(), piece.remaining());
+			else
+			{
+				byte[] bytes = new byte[Math.min(8192, piece.remaining())];
+				while (piece.hasRemaining())
+				{
+					int length = Math.min(bytes.length, piece.remaining());
+					piece.get(bytes, 0, length);
+					out.write(bytes, 0, length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes written so far, as views of the buffer alternating with
+	 * the shared buffers.
+	 */
+	private ByteBuffer[] pieces()
+	{
+		ByteBuffer[] pieces = new ByteBuffer[shared.size() * 2 + 1];
+		int from = 0;
+		for (int i = 0; i < shared.size(); i++)
+		{
+			int to = sharedAt.get(i);
+			pieces[2 * i] = view(from, to);
+			pieces[2 * i + 1] = shared.get(i).duplicate();
+			from = to;
+		}
+		pieces[pieces.length - 1] = view(from, buffer.position());
+		return pieces;
+	}
+
+	private ByteBuffer view(int from, int to)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.limit(to).position(from);
+		return view;
+	}
+
+	/**
+	 * Overwrites an int written earlier at <code>position</code> (as counted by
+	 * <code>size()</code>), e.g. a length prefix that was not known at the time.
+	 */
+	public void putInt(int position, int v)
+	{
+		// leave out the shared buffers that come before that position
+		int skipped = 0;
+		for (int i = 0; i < shared.size() && sharedAt.get(i) + skipped < position; i++)
+			skipped += shared.get(i).remaining();
+		buffer.putInt(position - skipped, v);
+	}
+
+	private void ensure(int more)
+	{
+		if (buffer.remaining() >= more)
+			return;
+		int capacity = buffer.capacity();
+		int needed = buffer.position() + more;
+		while (capacity < needed)
+			capacity = (capacity <= Integer.MAX_VALUE / 2 ? capacity * 2 : Integer.MAX_VALUE);
+		ByteBuffer bigger = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+
+	// ----- DataOutput -------------------------------------------------------
+	public void write(int b) { ensure(1); buffer.put((byte) b); }
+	public void write(byte[] b) { write(b, 0, b.length); }
+	public void write(byte[] b, int off, int len) { ensure(len); buffer.put(b, off, len); }
+	public void write(ByteBuffer b) { ensure(b.remaining()); buffer.put(b); }
+
+	/**
+	 * Writes the remaining bytes of <code>b</code> (without moving it). Large
+	 * buffers are not copied but referenced, so they must not change until
+	 * the writer is reset.
+	 */
+	public void writeShared(ByteBuffer b)
+	{
+		if (b.remaining() < MINIMUM_SHARED_BUFFER_SIZE)
+		{
+			write(b.duplicate());
+			return;
+		}
+		shared.add(b.duplicate());
+		sharedAt.add(buffer.position());
+		sharedSize += b.remaining();
+	}
+	public void writeBoolean(boolean v) { write(v ? 1 : 0); }
+	public void writeByte(int v) { write(v); }
+	public void writeShort(int v) { ensure(2); buffer.putShort((short) v); }
+	public void writeChar(int v) { ensure(2); buffer.putChar((char) v); }
+	public void writeInt(int v) { ensure(4); buffer.putInt(v); }
+	public void writeLong(long v) { ensure(8); buffer.putLong(v); }
+	public void writeFloat(float v) { ensure(4); buffer.putFloat(v); }
+	public void writeDouble(double v) { ensure(8); buffer.putDouble(v); }
+
+	public void writeBytes(String s)
+	{
+		int length = s.length();
+		ensure(length);
+		for (int i = 0; i < length; i++)
+			buffer.put((byte) s.charAt(i));
+	}
+
+	public void writeChars(String s)
+	{
+		int length = s.length();
+		ensure(length * 2);
+		for (int i = 0; i < length; i++)
+			buffer.putChar(s.charAt(i));
+	}
+
+	/**
+	 * The modified UTF-8 of DataOutput, for compatibility only; the codec itself
+	 * writes strings with <code>writeString()</code>.
+	 */
+	public void writeUTF(String s) throws IOException
+	{
+		int length = s.length();
+		int utfLength = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) utfLength++;
+			else if (c > 0x07FF) utfLength += 3;
+			else utfLength += 2;
+		}
+		if (utfLength > 65535)
+			throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+
+		ensure(2 + utfLength);
+		buffer.putShort((short) utfLength);
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				buffer.put((byte) c);
+			else if (c > 0x07FF)
+			{
+				buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else
+			{
+				buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	// ----- Compact forms ----------------------------------------------------
+	/**
+	 * Writes a non-negative int in 1 to 5 bytes, 7 bits at a time.
+	 */
+	public void writeVarInt(int v)
+	{
+		ensure(5);
+		while ((v & ~0x7F) != 0)
+		{
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	public void writeVarLong(long v)
+	{
+		ensure(10);
+		while ((v & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	/**
+	 * Writes any int so that small magnitudes, negative or not, take few bytes.
+	 */
+	public void writeSignedVarInt(int v)
+	{
+		writeVarInt((v << 1) ^ (v >> 31));
+	}
+
+	public void writeSignedVarLong(long v)
+	{
+		writeVarLong((v << 1) ^ (v >> 63));
+	}
+
+	/**
+	 * Starts a part of the message with a string table of its own, which can
+	 * therefore be read on its own (see BinaryReader.beginScope()), e.g. one
+	 * parameter value. Scopes do not nest.
+	 */
+	public void beginScope()
+	{
+		if (inScope) throw new IllegalStateException("scope already begun");
+		Map<String, Integer> swap = outerStrings;
+		outerStrings = strings;
+		strings = swap;
+		strings.clear();
+		inScope = true;
+	}
+
+	/**
+	 * Goes back to the string table of the message as a whole.
+	 */
+	public void endScope()
+	{
+		if (!inScope) throw new IllegalStateException("no scope begun");
+		Map<String, Integer> swap = strings;
+		strings = outerStrings;
+		outerStrings = swap;
+		inScope = false;
+	}
+
+	/**
+	 * Writes a string (possibly null) in UTF-8. A header of 0 stands for null,
+	 * 1 for a string spelled out right after it, and anything else for a
+	 * reference to an earlier string.
+	 */
+	public void writeString(String s)
+	{
+		if (s == null)
+		{
+			writeVarInt(0);
+			return;
+		}
+
+		boolean shared = s.length() <= MAXIMUM_SHARED_STRING_LENGTH;
+		if (shared)
+		{
+			Integer reference = strings.get(s);
+			if (reference != null)
+			{
+				writeVarInt(reference + 2);
+				return;
+			}
+			strings.put(s, strings.size());
+		}
+		writeVarInt(1);
+
+		int length = s.length();
+		int i = 0;
+		while (i < length && s.charAt(i) < 0x80)
+			i++;
+		if (i == length) // plain ASCII, by far the most common case
+		{
+			writeVarInt(length);
+			ensure(length);
+			for (i = 0; i < length; i++)
+				buffer.put((byte) s.charAt(i));
+		}
+		else
+		{
+			byte[] bytes = s.getBytes(UTF8);
+			writeVarInt(bytes.length);
+			write(bytes);
+		}
+	}
+}
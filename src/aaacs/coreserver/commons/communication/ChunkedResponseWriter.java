@@ -0,0 +1,77 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answers a request in parts, e.g. the thousands of listings a search found,
+ * a page at a time as they are fetched: the client can start on the first
+ * part while the server is still working on the rest. Every part is a partial
+ * ActionResponse (see ActionResponse.isPartial()) with some of the parameters,
+ * sent as a BinaryCodec frame as soon as it is written; the final part, which
+ * is not partial, may carry more parameters and carries any ErrorReports.
+ *
+ * All parts echo the correlation ID of the request, so that a client reading
+ * through an ActionMultiplexer (see ActionMultiplexer.sendChunked()) gets
+ * them even while other responses are sent on the same stream; each part is
+ * written while holding the lock of the stream, like the multiplexer does.
+ * A client reading the stream directly simply reads frames until one is not
+ * partial.
+ */
+public class ChunkedResponseWriter
+{
+	// ----- Instance members -------------------------------------------------
+	private final DataOutputStream out;
+	private final ActionCommunication request;
+	private int partCount = 0;
+	private boolean finished = false;
+
+	public ChunkedResponseWriter(DataOutputStream out, ActionCommunication request)
+	{
+		this.out = out;
+		this.request = request;
+	}
+
+	/**
+	 * @return how many parts were written so far, the final one included
+	 */
+	public int getPartCount() { return partCount; }
+	public boolean isFinished() { return finished; }
+
+	/**
+	 * Writes the next part, and flushes the stream so that it is sent straight
+	 * away.
+	 */
+	public ChunkedResponseWriter writePart(Parameters parameters) throws IOException
+	{
+		if (finished) throw new IllegalStateException("response.Finished");
+		ActionResponse part = new ActionResponse(request, parameters, null);
+		part.setPartial(true);
+		write(part);
+		return this;
+	}
+
+	/**
+	 * Writes the final part, which ends the response.
+	 *
+	 * @param parameters the last parameters, if any
+	 * @param errorReports the error reports, if any
+	 */
+	public void finish(Parameters parameters, List<ErrorReport> errorReports) throws IOException
+	{
+		if (finished) throw new IllegalStateException("response.Finished");
+		finished = true;
+		write(new ActionResponse(request, parameters, errorReports));
+	}
+
+	private void write(ActionResponse part) throws IOException
+	{
+		synchronized (out)
+		{
+			BinaryCodec.writeFrame(out, part);
+			out.flush();
+		}
+		partCount++;
+	}
+}
@@ -0,0 +1,310 @@
+package aaacs.coreserver.commons.communication;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Recycles the ActionRequests, ActionResponses and Parameters of the hottest
+ * paths, e.g. decoding incoming requests (BinaryCodec gets its instances from
+ * here): each thread keeps a few of each that were released, reset (see
+ * ActionCommunication.reset() and Parameters.reset()), and handed out again
+ * instead of new ones. The pool is off by default, and then acquiring simply
+ * creates and releasing does nothing.
+ *
+ * Whoever releases an object must make sure that nothing uses it any more;
+ * releasing a communication releases its parameters as well. An object that
+ * is never released is merely garbage collected, but in debug mode each one
+ * that is acquired is tracked, and one that is collected without having been
+ * released is logged as a leak, with where it was acquired. Debug mode also
+ * marks each object released until it is acquired again, and releasing an
+ * object so marked (on any thread, pooled or not) throws an
+ * IllegalStateException. A stale release of an object that was meanwhile
+ * handed out again is caught when its new owner releases it in turn.
+ */
+public class CommunicationPool
+{
+	// ----- Static members ---------------------------------------------------
+	private static final Logger logger = Logger.getLogger(CommunicationPool.class.getName());
+
+	private static volatile boolean enabled = false;
+	private static volatile boolean debug = false;
+	private static volatile int maximumPooled = 32; // of each kind, per thread
+
+	private static final AtomicLong created = new AtomicLong();
+	private static final AtomicLong reused = new AtomicLong();
+	private static final AtomicLong leaks = new AtomicLong();
+
+	private static final ThreadLocal<Pools> pools = new ThreadLocal<Pools>()
+	{
+		protected Pools initialValue() { return new Pools(); }
+	};
+
+	// debug mode: what was acquired and not released, by identity hash code
+	private static final Map<Integer, List<Tracker>> outstanding =
+		new HashMap<Integer, List<Tracker>>();
+	private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+	// debug mode: what was released and not acquired again, by identity hash code
+	private static final Map<Integer, List<WeakReference<Object>>> released =
+		new HashMap<Integer, List<WeakReference<Object>>>();
+
+	public static boolean isEnabled() { return enabled; }
+	public static void setEnabled(boolean b) { enabled = b; }
+	public static boolean isDebug() { return debug; }
+	public static void setDebug(boolean b)
+	{
+		debug = b;
+		if (!b)
+			synchronized (released) { released.clear(); }
+	}
+
+	public static int getMaximumPooled() { return maximumPooled; }
+	public static void setMaximumPooled(int maximum)
+	{
+		maximumPooled = (maximum < 0 ? 0 : maximum);
+	}
+
+	public static long getCreated() { return created.get(); }
+	public static long getReused() { return reused.get(); }
+	public static long getLeaks() { return leaks.get(); }
+
+	public static void resetStatistics()
+	{
+		created.set(0);
+		reused.set(0);
+		leaks.set(0);
+	}
+
+	// ----- Acquiring --------------------------------------------------------
+	public static ActionRequest acquireRequest()
+	{
+		ActionRequest request = (enabled ? pools.get().requests.poll() : null);
+		if (request == null)
+		{
+			created.incrementAndGet();
+			request = new ActionRequest();
+		}
+		else
+			reused.incrementAndGet();
+		return track(request);
+	}
+
+	public static ActionResponse acquireResponse()
+	{
+		ActionResponse response = (enabled ? pools.get().responses.poll() : null);
+		if (response == null)
+		{
+			created.incrementAndGet();
+			response = new ActionResponse();
+		}
+		else
+			reused.incrementAndGet();
+		return track(response);
+	}
+
+	public static Parameters acquireParameters()
+	{
+		Parameters parameters = (enabled ? pools.get().parameters.poll() : null);
+		if (parameters == null)
+		{
+			created.incrementAndGet();
+			parameters = new Parameters();
+		}
+		else
+			reused.incrementAndGet();
+		return track(parameters);
+	}
+
+	// ----- Releasing --------------------------------------------------------
+	/**
+	 * Resets the communication and its parameters and keeps them for reuse.
+	 * Only plain ActionRequests and ActionResponses are kept, not subclasses
+	 * nor batches.
+	 */
+	public static void release(ActionCommunication communication)
+	{
+		if (communication == null || !enabled)
+			return;
+		Parameters parameters = communication.getParameters();
+		if (parameters != null)
+			release(parameters);
+
+		Pools threadPools = pools.get();
+		if (communication.getClass() == ActionRequest.class)
+			keep(threadPools.requests, (ActionRequest) communication);
+		else if (communication.getClass() == ActionResponse.class)
+			keep(threadPools.responses, (ActionResponse) communication);
+		else
+			untrack(communication);
+	}
+
+	public static void release(Parameters parameters)
+	{
+		if (parameters == null || !enabled)
+			return;
+		if (parameters.getClass() == Parameters.class)
+			keep(pools.get().parameters, parameters);
+		else
+			untrack(parameters);
+	}
+
+	private static <T> void keep(ArrayDeque<T> pool, T object)
+	{
+		if (debug)
+			markReleased(object);
+		untrack(object);
+		if (pool.size() >= maximumPooled)
+			return;
+		if (object instanceof ActionCommunication)
+			((ActionCommunication) object).reset();
+		else
+			((Parameters) object).reset();
+		pool.push(object);
+	}
+
+	// ----- Leak detection ---------------------------------------------------
+	private static <T> T track(T object)
+	{
+		if (!debug || !enabled)
+			return object;
+		reportLeaks();
+		unmarkReleased(object);
+		Tracker tracker = new Tracker(object);
+		synchronized (outstanding)
+		{
+			List<Tracker> trackers = outstanding.get(tracker.hash);
+			if (trackers == null)
+				outstanding.put(tracker.hash, trackers = new ArrayList<Tracker>(1));
+			trackers.add(tracker);
+		}
+		return object;
+	}
+
+	private static void untrack(Object object)
+	{
+		int hash = System.identityHashCode(object);
+		synchronized (outstanding)
+		{
+			List<Tracker> trackers = outstanding.get(hash);
+			if (trackers == null)
+				return;
+			for (int i = 0; i < trackers.size(); i++)
+			{
+				Tracker tracker = trackers.get(i);
+				if (tracker.get() == object)
+				{
+					tracker.clear(); // never enqueued then
+					remove(trackers, i, hash);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Logs every tracked object that was collected without being released.
+	 */
+	public static void reportLeaks()
+	{
+		Tracker tracker;
+		while ((tracker = (Tracker) collected.poll()) != null)
+		{
+			synchronized (outstanding)
+			{
+				List<Tracker> trackers = outstanding.get(tracker.hash);
+				int index = (trackers == null ? -1 : trackers.indexOf(tracker));
+				if (index < 0)
+					continue;
+				remove(trackers, index, tracker.hash);
+			}
+			leaks.incrementAndGet();
+			logger.log(Level.WARNING, "pool.Leak: a " + tracker.className +
+				" was never released", tracker.site);
+		}
+	}
+
+	private static void remove(List<Tracker> trackers, int index, int hash)
+	{
+		trackers.remove(index);
+		if (trackers.isEmpty())
+			outstanding.remove(hash);
+	}
+
+	// ----- Double releases --------------------------------------------------
+	/**
+	 * @throws IllegalStateException if the object is marked released already
+	 */
+	private static void markReleased(Object object)
+	{
+		int hash = System.identityHashCode(object);
+		synchronized (released)
+		{
+			List<WeakReference<Object>> marks = released.get(hash);
+			if (marks == null)
+				released.put(hash, marks = new ArrayList<WeakReference<Object>>(1));
+			for (Iterator<WeakReference<Object>> i = marks.iterator(); i.hasNext(); )
+			{
+				Object marked = i.next().get();
+				if (marked == object)
+					throw new IllegalStateException("pool.AlreadyReleased");
+				if (marked == null)
+					i.remove();
+			}
+			marks.add(new WeakReference<Object>(object));
+		}
+	}
+
+	private static void unmarkReleased(Object object)
+	{
+		int hash = System.identityHashCode(object);
+		synchronized (released)
+		{
+			List<WeakReference<Object>> marks = released.get(hash);
+			if (marks == null)
+				return;
+			for (Iterator<WeakReference<Object>> i = marks.iterator(); i.hasNext(); )
+			{
+				Object marked = i.next().get();
+				if (marked == object || marked == null)
+					i.remove();
+			}
+			if (marks.isEmpty())
+				released.remove(hash);
+		}
+	}
+
+	/**
+	 * Where an object was acquired, enqueued once the object is collected.
+	 */
+	private static class Tracker extends WeakReference<Object>
+	{
+		final int hash;
+		final String className;
+		final Throwable site = new Throwable("acquired here");
+
+		Tracker(Object object)
+		{
+			super(object, collected);
+			hash = System.identityHashCode(object);
+			className = object.getClass().getName();
+		}
+	}
+
+	/**
+	 * The objects kept by one thread.
+	 */
+	private static class Pools
+	{
+		final ArrayDeque<ActionRequest> requests = new ArrayDeque<ActionRequest>();
+		final ArrayDeque<ActionResponse> responses = new ArrayDeque<ActionResponse>();
+		final ArrayDeque<Parameters> parameters = new ArrayDeque<Parameters>();
+	}
+}
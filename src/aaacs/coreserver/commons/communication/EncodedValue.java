@@ -0,0 +1,32 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A parameter value that has been received but not decoded yet: the bytes of
+ * its encoding (see BinaryCodec), which ParameterMap decodes the first time
+ * the value is asked for.
+ */
+final class EncodedValue
+{
+	private final ByteBuffer bytes;
+
+	EncodedValue(ByteBuffer bytes)
+	{
+		this.bytes = bytes;
+	}
+
+	/** @return a view of the encoded bytes, free to be moved. */
+	ByteBuffer getBytes() { return bytes.duplicate(); }
+
+	Object decode() throws IOException
+	{
+		return BinaryCodec.decodeValue(bytes.duplicate());
+	}
+
+	public String toString()
+	{
+		return "<" + bytes.remaining() + " encoded bytes>";
+	}
+}
@@ -189,6 +189,16 @@ public class ErrorReport implements Serializable
 	
 	public boolean hasItems() { return messages.size() > 0; }
 
+	/**
+	 * Only for restoring a report that was sent over the wire (see BinaryCodec):
+	 * throwable chains are otherwise only ever built from real throwables.
+	 */
+	void setThrowableChain(String item, List<ThrowableSnapshot> chain)
+	{
+		if (chain != null)
+			throwableChains.put(item, chain);
+	}
+
 	// ------------------------------------------------------------------------
 	// A bunch of addItem methods to support adding different forms of 
 	// information to the error.
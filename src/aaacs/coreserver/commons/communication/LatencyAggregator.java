@@ -0,0 +1,132 @@
+package aaacs.coreserver.commons.communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import aaacs.coreserver.commons.communication.Timings.Phase;
+import aaacs.coreserver.commons.utilities.LatencyHistogram;
+
+/**
+ * Breaks the Timings of many round trips down into their segments, and counts
+ * the duration of each in a LatencyHistogram per action name and version. The
+ * requester feeds it each response as it comes back, with the request:
+ *
+ * <pre>
+ * request.startTimings();
+ * ActionResponse response = ...;
+ * aggregator.record(request, response);
+ * ...
+ * aggregator.getHistogram("listing.Search", (short) 1, Segment.HANDLING).getValueAtPercentile(99);
+ * </pre>
+ *
+ * Segments whose phases were not all marked are simply not counted. An
+ * aggregator is safe for concurrent use.
+ */
+public class LatencyAggregator
+{
+	public enum Segment
+	{
+		/** From CREATED to SERIALIZED, on the requester */
+		SERIALIZATION,
+		/** Both ways, i.e. ROUND_TRIP less SERVER */
+		NETWORK,
+		/** From RECEIVED to DESERIALIZED */
+		DESERIALIZATION,
+		/** From DESERIALIZED to VALIDATED */
+		VALIDATION,
+		/** From VALIDATED (or DESERIALIZED) to HANDLED */
+		HANDLING,
+		/** From HANDLED to RESPONSE_SERIALIZED */
+		RESPONSE_SERIALIZATION,
+		/** From RECEIVED to RESPONSE_SERIALIZED, on the Core Server */
+		SERVER,
+		/** From SERIALIZED to RESPONSE_RECEIVED, on the requester */
+		ROUND_TRIP
+	}
+
+	// ----- Instance members -------------------------------------------------
+	private final ConcurrentHashMap<String, Map<Segment, LatencyHistogram>> actions =
+		new ConcurrentHashMap<String, Map<Segment, LatencyHistogram>>();
+
+	/**
+	 * Records the timings of the round trip of <code>request</code>, as echoed
+	 * by <code>response</code>.
+	 */
+	public void record(ActionRequest request, ActionResponse response)
+	{
+		Timings timings = (response.getTimings() != null ?
+			response.getTimings() : request.getTimings());
+		if (timings != null)
+			record(request.getActionName(), request.getActionVersion(), timings);
+	}
+
+	public void record(String actionName, short actionVersion, Timings timings)
+	{
+		Map<Segment, LatencyHistogram> histograms = histograms(key(actionName, actionVersion));
+		record(histograms, Segment.SERIALIZATION, timings.getDuration(Phase.CREATED, Phase.SERIALIZED));
+		record(histograms, Segment.NETWORK, timings.getNetworkTime());
+		record(histograms, Segment.DESERIALIZATION, timings.getDuration(Phase.RECEIVED, Phase.DESERIALIZED));
+		record(histograms, Segment.VALIDATION, timings.getDuration(Phase.DESERIALIZED, Phase.VALIDATED));
+		record(histograms, Segment.HANDLING, timings.isMarked(Phase.VALIDATED) ?
+			timings.getDuration(Phase.VALIDATED, Phase.HANDLED) :
+			timings.getDuration(Phase.DESERIALIZED, Phase.HANDLED));
+		record(histograms, Segment.RESPONSE_SERIALIZATION,
+			timings.getDuration(Phase.HANDLED, Phase.RESPONSE_SERIALIZED));
+		record(histograms, Segment.SERVER, timings.getDuration(Phase.RECEIVED, Phase.RESPONSE_SERIALIZED));
+		record(histograms, Segment.ROUND_TRIP, timings.getDuration(Phase.SERIALIZED, Phase.RESPONSE_RECEIVED));
+	}
+
+	/**
+	 * @return the histogram of a segment of an action, in nanoseconds, or null
+	 * if nothing was recorded for that action
+	 */
+	public LatencyHistogram getHistogram(String actionName, short actionVersion, Segment segment)
+	{
+		Map<Segment, LatencyHistogram> histograms = actions.get(key(actionName, actionVersion));
+		return (histograms == null ? null : histograms.get(segment));
+	}
+
+	/**
+	 * @return the actions recorded, as "name/version", sorted
+	 */
+	public List<String> getActions()
+	{
+		List<String> keys = new ArrayList<String>(actions.keySet());
+		Collections.sort(keys);
+		return keys;
+	}
+
+	public void clear()
+	{
+		actions.clear();
+	}
+
+	// ----- Helpers ----------------------------------------------------------
+	private static String key(String actionName, short actionVersion)
+	{
+		return actionName + "/" + actionVersion;
+	}
+
+	private Map<Segment, LatencyHistogram> histograms(String key)
+	{
+		Map<Segment, LatencyHistogram> histograms = actions.get(key);
+		if (histograms != null)
+			return histograms;
+		histograms = new EnumMap<Segment, LatencyHistogram>(Segment.class);
+		for (Segment segment : Segment.values())
+			histograms.put(segment, new LatencyHistogram());
+		Map<Segment, LatencyHistogram> previous = actions.putIfAbsent(key, histograms);
+		return (previous != null ? previous : histograms);
+	}
+
+	private static void record(Map<Segment, LatencyHistogram> histograms, Segment segment,
+		long duration)
+	{
+		if (duration >= 0)
+			histograms.get(segment).record(duration);
+	}
+}
@@ -2,10 +2,15 @@ package aaacs.coreserver.commons.communication;
 
 import java.io.Serializable;
 
+import aaacs.coreserver.commons.utilities.Clock;
+
 /**
  * @author aaa
  * Created on Aug 20, 2003 at 6:08:21 AM.
  *
+ * The token time is taken from the default Clock, i.e. the system time of day
+ * unless set otherwise, so that other Core Servers can check it (see
+ * Clock.getDefault()).
  */
 public class LoginToken implements Serializable
 {
@@ -29,7 +34,45 @@ public class LoginToken implements Serializable
 			inactivityTimeout = timeout;
 	}
 	//private static final String SEPARATOR = "::";
-	private static final int supported_versions[] = {1};
+	private static volatile int supported_versions[] = {1};
+	// the version of new tokens, which is also that of the key signing them
+	// (see LoginTokenSigner)
+	private static volatile int currentVersion = 1;
+
+	public static int[] getSupportedVersions() { return supported_versions.clone(); }
+	public static int getCurrentVersion() { return currentVersion; }
+
+	/**
+	 * Changes the versions accepted, e.g. to rotate the keys tokens are signed
+	 * with: first support a new version next to the current one, then make it
+	 * current, and finally, once the tokens of the old version have expired,
+	 * stop supporting the old version.
+	 */
+	public static synchronized void setSupportedVersions(int... versions)
+	{
+		if (versions == null || versions.length == 0)
+			throw new IllegalArgumentException("versions.Empty");
+		for (int v : versions)
+			if (v <= 0) throw new IllegalArgumentException("version.NotPositive");
+		int[] copy = versions.clone();
+		boolean current = false;
+		for (int v : copy)
+			current |= (v == currentVersion);
+		if (!current)
+			throw new IllegalArgumentException("version.CurrentNotSupported");
+		supported_versions = copy;
+	}
+
+	public static synchronized void setCurrentVersion(int version)
+	{
+		for (int v : supported_versions)
+			if (v == version)
+			{
+				currentVersion = version;
+				return;
+			}
+		throw new IllegalArgumentException("version.NotSupported");
+	}
 
 	// ----- Instance members -------------------------------------------------
 	private int version;
@@ -50,9 +93,20 @@ public class LoginToken implements Serializable
 	 */
 	public LoginToken(long inUserIdk)
 	{
-		version = 1;
+		version = currentVersion;
+		userIdk = inUserIdk;
+		tokenTime = Clock.getDefault().currentTimeMillis();
+	}
+
+	/**
+	 * Only for restoring a token that was sent over the wire (see BinaryCodec
+	 * and LoginTokenSigner).
+	 */
+	LoginToken(int inVersion, long inUserIdk, long inTokenTime)
+	{
+		version = inVersion;
 		userIdk = inUserIdk;
-		tokenTime = System.currentTimeMillis();
+		tokenTime = inTokenTime;
 	}
 
 	public long getTokenTime() { return tokenTime; }
@@ -65,10 +119,20 @@ public class LoginToken implements Serializable
 
 	public LoginToken refreshTokenTime() 
 	{ 
-		tokenTime = System.currentTimeMillis();
+		tokenTime = Clock.getDefault().currentTimeMillis();
 		return this; // for easy insertion in calls...lazy eh.
 	}
 
+	/**
+	 * Only for LoginTokenRegistry, which hands out one coalesced time to all
+	 * the concurrent requests of a user.
+	 */
+	LoginToken refreshTokenTime(long inTokenTime)
+	{
+		tokenTime = inTokenTime;
+		return this;
+	}
+
 	public boolean isValidVersion()
 	{
 		for (int v : supported_versions)
@@ -82,7 +146,7 @@ public class LoginToken implements Serializable
 	 */
 	public boolean isActive()
 	{
-		long currentTime = System.currentTimeMillis();
+		long currentTime = Clock.getDefault().currentTimeMillis();
 		if (currentTime <= tokenTime + inactivityTimeout)
 			return true;
 		return false;
@@ -0,0 +1,261 @@
+package aaacs.coreserver.commons.communication;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import aaacs.coreserver.commons.utilities.Clock;
+
+/**
+ * The logged-in users, as known to the Core Server: every LoginToken that
+ * comes in is checked here, in constant time, rather than trusted for its own
+ * token time. A token is valid if its version is supported, it is not
+ * cancelled, its user logged in (see login()) and was active within the
+ * inactivity timeout (see LoginToken.getInactivityTimeout()), and it was not
+ * revoked since.
+ *
+ * Inactivity is measured with the Clock.nanoTime() of this Core Server, so
+ * that setting the system clock neither expires every user at once nor keeps
+ * them all alive; the times of day, which tokens carry to other Core Servers,
+ * are only compared with each other.
+ *
+ * Revoking a user (see revoke()) invalidates every token of that user at once,
+ * until the user logs in again. Users that were inactive for longer than the
+ * timeout are forgotten: when checked, and every sweep interval by whichever
+ * request happens to come in (see sweep()); there is no thread of its own.
+ *
+ * The activity of a user is only written when it moved on by at least the
+ * refresh granularity, so that the many concurrent requests of a busy user do
+ * not all write the same time; checkAndRefresh() then gives each of their
+ * tokens the time written last.
+ *
+ * A registry is safe for concurrent use.
+ */
+public class LoginTokenRegistry
+{
+	public enum Status
+	{
+		VALID,
+		BAD_VERSION,
+		CANCELLED,
+		UNKNOWN,  // not logged in, or forgotten since
+		EXPIRED,
+		REVOKED
+	}
+
+	/**
+	 * One logged-in user.
+	 */
+	private static final class Entry
+	{
+		volatile long lastActivity; // 0 if never active
+		volatile long lastActivityNanos; // its Clock.nanoTime(), for expiry
+		volatile long revokedAt = 0; // 0 if never revoked
+
+		Entry(long now, long nanoNow)
+		{
+			lastActivity = now;
+			lastActivityNanos = nanoNow;
+		}
+
+		/**
+		 * Records activity; only while holding the lock of the entry.
+		 */
+		void active(long now, long nanoNow)
+		{
+			if (now > lastActivity)
+				lastActivity = now;
+			if (nanoNow - lastActivityNanos > 0)
+				lastActivityNanos = nanoNow;
+		}
+	}
+
+	// ----- Instance members -------------------------------------------------
+	private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+	private volatile long refreshGranularity = 1000;
+	private volatile long sweepInterval = 60 * 1000;
+	private final AtomicLong lastSweep = new AtomicLong(Clock.getDefault().currentTimeMillis());
+
+	public long getRefreshGranularity() { return refreshGranularity; }
+	public void setRefreshGranularity(long millis)
+	{
+		refreshGranularity = (millis < 0 ? 0 : millis);
+	}
+
+	public long getSweepInterval() { return sweepInterval; }
+	public void setSweepInterval(long millis)
+	{
+		if (millis < 1000)
+			sweepInterval = 1000; // minimum value: sweeping is not free
+		else
+			sweepInterval = millis;
+	}
+
+	/** @return how many users are known, expired ones not yet swept included */
+	public int size() { return entries.size(); }
+
+	// ----- Logging in and out -----------------------------------------------
+	/**
+	 * Logs the user in.
+	 *
+	 * @return a new, active token for the user
+	 */
+	public LoginToken login(long userIdk)
+	{
+		Clock clock = Clock.getDefault();
+		long now = clock.currentTimeMillis();
+		long nanoNow = clock.nanoTime();
+		sweepIfDue(now);
+		Entry entry;
+		do
+		{
+			entry = entries.get(userIdk);
+			if (entry == null)
+			{
+				Entry previous = entries.putIfAbsent(userIdk, entry = new Entry(now, nanoNow));
+				if (previous != null)
+					entry = previous;
+			}
+			synchronized (entry)
+			{
+				// a token of the same millisecond as a revocation would be revoked
+				if (now <= entry.revokedAt)
+					now = entry.revokedAt + 1;
+				entry.active(now, nanoNow);
+			}
+		}
+		while (entries.get(userIdk) != entry); // swept in the meantime
+		return new LoginToken(LoginToken.getCurrentVersion(), userIdk, now);
+	}
+
+	/**
+	 * Invalidates every token of the user, until the user logs in again.
+	 */
+	public void revoke(long userIdk)
+	{
+		long now = Clock.getDefault().currentTimeMillis();
+		Entry entry = entries.get(userIdk);
+		if (entry == null)
+		{
+			Entry previous = entries.putIfAbsent(userIdk, entry = new Entry(0, 0));
+			if (previous != null)
+				entry = previous;
+		}
+		synchronized (entry)
+		{
+			entry.revokedAt = Math.max(now, entry.lastActivity);
+		}
+	}
+
+	// ----- Checking ---------------------------------------------------------
+	public boolean isValid(LoginToken token)
+	{
+		return check(token) == Status.VALID;
+	}
+
+	/**
+	 * @return what is wrong with the token, if anything
+	 */
+	public Status check(LoginToken token)
+	{
+		Clock clock = Clock.getDefault();
+		return check(token, clock.currentTimeMillis(), clock.nanoTime());
+	}
+
+	/**
+	 * Checks the token and, if it is valid, records the activity of its user
+	 * and refreshes its time (see the class comment).
+	 */
+	public Status checkAndRefresh(LoginToken token)
+	{
+		Clock clock = Clock.getDefault();
+		long now = clock.currentTimeMillis();
+		long nanoNow = clock.nanoTime();
+		Status status = check(token, now, nanoNow);
+		if (status != Status.VALID)
+			return status;
+		Entry entry = entries.get(token.getUserIdk());
+		if (entry == null)
+			return Status.UNKNOWN; // swept in the meantime
+		// measured on nanoTime(), as the time of day may have been set back
+		long last = entry.lastActivity;
+		if (nanoNow - entry.lastActivityNanos >= refreshGranularity * 1000000L)
+		{
+			synchronized (entry)
+			{
+				entry.active(now, nanoNow);
+				last = entry.lastActivity;
+			}
+		}
+		if (token.getTokenTime() < last)
+			token.refreshTokenTime(last);
+		return status;
+	}
+
+	private Status check(LoginToken token, long now, long nanoNow)
+	{
+		sweepIfDue(now);
+		if (token == null || token.isCancelled())
+			return Status.CANCELLED;
+		if (!token.isValidVersion())
+			return Status.BAD_VERSION;
+		Entry entry = entries.get(token.getUserIdk());
+		if (entry == null)
+			return Status.UNKNOWN;
+		long lastActivity = entry.lastActivity;
+		long revokedAt = entry.revokedAt;
+		if (revokedAt != 0 && (token.getTokenTime() <= revokedAt || lastActivity <= revokedAt))
+			return Status.REVOKED;
+		if (isInactive(entry, nanoNow))
+		{
+			if (isExpired(entry, now, nanoNow))
+				entries.remove(token.getUserIdk(), entry);
+			return Status.EXPIRED;
+		}
+		return Status.VALID;
+	}
+
+	// ----- Sweeping ---------------------------------------------------------
+	/**
+	 * Forgets the users that were inactive for longer than the timeout. A
+	 * revoked user is only forgotten once the tokens revoked would have
+	 * expired anyway.
+	 *
+	 * @return how many users were forgotten
+	 */
+	public int sweep()
+	{
+		Clock clock = Clock.getDefault();
+		long now = clock.currentTimeMillis();
+		long nanoNow = clock.nanoTime();
+		lastSweep.set(now);
+		int swept = 0;
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); )
+		{
+			if (isExpired(i.next(), now, nanoNow))
+			{
+				i.remove();
+				swept++;
+			}
+		}
+		return swept;
+	}
+
+	private void sweepIfDue(long now)
+	{
+		long last = lastSweep.get();
+		if (now - last >= sweepInterval && lastSweep.compareAndSet(last, now))
+			sweep();
+	}
+
+	private static boolean isInactive(Entry entry, long nanoNow)
+	{
+		return entry.lastActivity == 0 ||
+			nanoNow - entry.lastActivityNanos > LoginToken.getInactivityTimeout() * 1000000L;
+	}
+
+	private static boolean isExpired(Entry entry, long now, long nanoNow)
+	{
+		return isInactive(entry, nanoNow) && now > entry.revokedAt + LoginToken.getInactivityTimeout();
+	}
+}
@@ -0,0 +1,250 @@
+package aaacs.coreserver.commons.communication;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Turns LoginTokens into signed strings and back, so that any Core Server can
+ * tell a token it issued (or that another Core Server sharing its keys issued)
+ * from a forged or altered one on its own, without looking it up anywhere.
+ *
+ * A signed token is 33 bytes - its version (one byte), user ID and token time
+ * (8 bytes each), and the first 16 bytes of their HMAC-SHA256 - in unpadded,
+ * URL-safe base64 (44 characters).
+ *
+ * Each token version has a key of its own (see addKey()), and only supported
+ * versions (see LoginToken.getSupportedVersions()) are accepted, so keys are
+ * rotated by adding a version: see LoginToken.setSupportedVersions(). Each
+ * thread keeps its own Mac for each key, as creating one is far more costly
+ * than computing a MAC with it.
+ *
+ * A verified token is authentic, but may still be inactive: see
+ * LoginToken.isActive().
+ */
+public class LoginTokenSigner
+{
+	// ----- Static members ---------------------------------------------------
+	public static final String ALGORITHM = "HmacSHA256";
+	public static final int MAC_LENGTH = 16;
+	public static final int MINIMUM_KEY_LENGTH = 16;
+	static final int PAYLOAD_LENGTH = 1 + 8 + 8;
+	static final int TOKEN_LENGTH = PAYLOAD_LENGTH + MAC_LENGTH;
+
+	private static final char[] ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final int[] VALUES = new int[128];
+	static
+	{
+		Arrays.fill(VALUES, -1);
+		for (int i = 0; i < ALPHABET.length; i++)
+			VALUES[ALPHABET[i]] = i;
+	}
+
+	// ----- Instance members -------------------------------------------------
+	private final ConcurrentHashMap<Integer, SecretKeySpec> keys =
+		new ConcurrentHashMap<Integer, SecretKeySpec>();
+
+	// the Macs of each thread, by version
+	private final ThreadLocal<Map<Integer, KeyedMac>> macs = new ThreadLocal<Map<Integer, KeyedMac>>()
+	{
+		protected Map<Integer, KeyedMac> initialValue() { return new HashMap<Integer, KeyedMac>(); }
+	};
+
+	/**
+	 * A Mac, with the key it was made for.
+	 */
+	private static final class KeyedMac
+	{
+		final SecretKeySpec key;
+		final Mac mac;
+
+		KeyedMac(SecretKeySpec inKey)
+		{
+			key = inKey;
+			mac = newMac(inKey);
+		}
+	}
+
+	// ----- Keys -------------------------------------------------------------
+	/**
+	 * Signs and verifies the tokens of <code>version</code> with
+	 * <code>key</code>, replacing any previous key of that version.
+	 */
+	public void addKey(int version, byte[] key)
+	{
+		if (version <= 0 || version > 255) throw new IllegalArgumentException("version.OutOfRange");
+		if (key == null || key.length < MINIMUM_KEY_LENGTH)
+			throw new IllegalArgumentException("key.TooShort");
+		SecretKeySpec spec = new SecretKeySpec(key, ALGORITHM);
+		newMac(spec); // fails now rather than when first used
+		keys.put(version, spec);
+	}
+
+	public void removeKey(int version)
+	{
+		keys.remove(version);
+	}
+
+	public boolean hasKey(int version) { return keys.containsKey(version); }
+
+	// ----- Signing ----------------------------------------------------------
+	/**
+	 * @return the signed token, in base64
+	 */
+	public String sign(LoginToken token)
+	{
+		return encode(signBinary(token));
+	}
+
+	/**
+	 * @return the signed token, in binary
+	 */
+	public byte[] signBinary(LoginToken token)
+	{
+		Mac mac = mac(token.getVersion());
+		if (mac == null) throw new IllegalArgumentException("key.Missing");
+		byte[] bytes = new byte[TOKEN_LENGTH];
+		bytes[0] = (byte) token.getVersion();
+		putLong(bytes, 1, token.getUserIdk());
+		putLong(bytes, 9, token.getTokenTime());
+		mac.update(bytes, 0, PAYLOAD_LENGTH);
+		System.arraycopy(mac.doFinal(), 0, bytes, PAYLOAD_LENGTH, MAC_LENGTH);
+		return bytes;
+	}
+
+	// ----- Verifying --------------------------------------------------------
+	/**
+	 * @return the token, or null if it is malformed, of a version that is not
+	 * supported or has no key, or not signed with that key
+	 */
+	public LoginToken verify(String signed)
+	{
+		byte[] bytes = decode(signed);
+		return (bytes == null ? null : verify(bytes));
+	}
+
+	public LoginToken verify(byte[] signed)
+	{
+		if (signed == null || signed.length != TOKEN_LENGTH)
+			return null;
+		LoginToken token = new LoginToken(signed[0] & 0xFF, getLong(signed, 1), getLong(signed, 9));
+		if (!token.isValidVersion())
+			return null;
+		Mac mac = mac(token.getVersion());
+		if (mac == null)
+			return null;
+		mac.update(signed, 0, PAYLOAD_LENGTH);
+		byte[] expected = mac.doFinal();
+		int difference = 0; // in constant time
+		for (int i = 0; i < MAC_LENGTH; i++)
+			difference |= expected[i] ^ signed[PAYLOAD_LENGTH + i];
+		return (difference == 0 ? token : null);
+	}
+
+	// ----- Helpers ----------------------------------------------------------
+	/**
+	 * @return the Mac of this thread for the key of the version, or null if
+	 * there is no such key
+	 */
+	private Mac mac(int version)
+	{
+		SecretKeySpec key = keys.get(version);
+		if (key == null)
+			return null;
+		Map<Integer, KeyedMac> threadMacs = macs.get();
+		KeyedMac cached = threadMacs.get(version);
+		if (cached == null || cached.key != key)
+		{
+			cached = new KeyedMac(key);
+			threadMacs.put(version, cached);
+		}
+		return cached.mac;
+	}
+
+	private static Mac newMac(SecretKeySpec key)
+	{
+		try
+		{
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac;
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new IllegalArgumentException("key.Unusable", e);
+		}
+	}
+
+	private static void putLong(byte[] bytes, int offset, long v)
+	{
+		for (int i = 7; i >= 0; i--, v >>>= 8)
+			bytes[offset + i] = (byte) v;
+	}
+
+	private static long getLong(byte[] bytes, int offset)
+	{
+		long v = 0;
+		for (int i = 0; i < 8; i++)
+			v = (v << 8) | (bytes[offset + i] & 0xFF);
+		return v;
+	}
+
+	/**
+	 * Unpadded, URL-safe base64.
+	 */
+	static String encode(byte[] bytes)
+	{
+		StringBuilder s = new StringBuilder((bytes.length * 4 + 2) / 3);
+		int i = 0;
+		for (; i + 3 <= bytes.length; i += 3)
+		{
+			int v = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+			s.append(ALPHABET[v >>> 18]).append(ALPHABET[(v >>> 12) & 63])
+				.append(ALPHABET[(v >>> 6) & 63]).append(ALPHABET[v & 63]);
+		}
+		int left = bytes.length - i;
+		if (left > 0)
+		{
+			int v = (bytes[i] & 0xFF) << 16 | (left == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+			s.append(ALPHABET[v >>> 18]).append(ALPHABET[(v >>> 12) & 63]);
+			if (left == 2)
+				s.append(ALPHABET[(v >>> 6) & 63]);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * @return the bytes, or null if <code>s</code> is not unpadded, URL-safe
+	 * base64
+	 */
+	static byte[] decode(String s)
+	{
+		if (s == null || s.length() % 4 == 1)
+			return null;
+		byte[] bytes = new byte[s.length() * 3 / 4];
+		int v = 0, bits = 0, n = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			int d = (c < 128 ? VALUES[c] : -1);
+			if (d < 0)
+				return null;
+			v = (v << 6) | d;
+			bits += 6;
+			if (bits >= 8)
+			{
+				bits -= 8;
+				bytes[n++] = (byte) (v >>> bits);
+			}
+		}
+		if ((v & ((1 << bits) - 1)) != 0)
+			return null; // not the canonical encoding
+		return bytes;
+	}
+}
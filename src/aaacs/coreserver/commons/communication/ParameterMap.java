@@ -0,0 +1,198 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The storage behind Parameters: names and values in two parallel arrays, in
+ * the order in which they were first put. A handful of parameters is looked up
+ * by simply going through the names; only above LINEAR_LIMIT entries is an
+ * open-addressing table of indexes (with linear probing) kept alongside.
+ *
+ * Compared to a LinkedHashMap, there is no entry object per parameter, which
+ * for the usual 3 to 15 parameters of a request halves the memory retained.
+ * Names are never null. Not thread-safe, just like the map it replaces: even
+ * get() may change it.
+ *
+ * The values of received parameters start out as EncodedValues, which get()
+ * decodes the first time and then replaces with what they decode to.
+ */
+final class ParameterMap
+{
+	// ----- Static members ---------------------------------------------------
+	static final int LINEAR_LIMIT = 8;
+	private static final int INITIAL_CAPACITY = 4;
+	private static final String[] NO_KEYS = new String[0];
+	private static final Object[] NO_VALUES = new Object[0];
+
+	// ----- Instance members -------------------------------------------------
+	private String[] keys = NO_KEYS;
+	private Object[] values = NO_VALUES;
+	private int size = 0;
+	// index + 1 of the entry with that hash, 0 for a free slot; null while
+	// there are no more than LINEAR_LIMIT entries
+	private int[] table = null;
+
+	// ----- Access -----------------------------------------------------------
+	int size() { return size; }
+	boolean isEmpty() { return size == 0; }
+
+	/** @return the name of the <code>index</code>th parameter put. */
+	String keyAt(int index) { return keys[index]; }
+	/**
+	 * @return the value of the <code>index</code>th parameter put, which may
+	 * still be an EncodedValue.
+	 */
+	Object valueAt(int index) { return values[index]; }
+
+	/**
+	 * @return the value of the parameter, decoded if need be
+	 */
+	Object get(String key)
+	{
+		int index = indexOf(key);
+		if (index < 0)
+			return null;
+		Object value = values[index];
+		if (value instanceof EncodedValue)
+		{
+			try
+			{
+				value = ((EncodedValue) value).decode();
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("parameter.Corrupt", e);
+			}
+			values[index] = value;
+		}
+		return value;
+	}
+
+	boolean containsKey(String key)
+	{
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Replaces the value of an existing name in place (keeping its position),
+	 * or adds the name at the end.
+	 *
+	 * @return the previous value, if any
+	 */
+	Object put(String key, Object value)
+	{
+		int index = indexOf(key);
+		if (index >= 0)
+		{
+			Object previous = values[index];
+			values[index] = value;
+			return previous;
+		}
+
+		if (size == keys.length)
+		{
+			int capacity = (keys.length == 0 ? INITIAL_CAPACITY : keys.length * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+
+		if (table != null && size * 2 <= table.length)
+			insert(table, key, size - 1);
+		else if (size > LINEAR_LIMIT)
+			rehash();
+		return null;
+	}
+
+	/**
+	 * @return the value removed, if any; the parameters after it move up.
+	 */
+	Object remove(String key)
+	{
+		int index = indexOf(key);
+		if (index < 0)
+			return null;
+		Object previous = values[index];
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		keys[size] = null;
+		values[size] = null;
+		if (size > LINEAR_LIMIT)
+			rehash();
+		else
+			table = null;
+		return previous;
+	}
+
+	void clear()
+	{
+		Arrays.fill(keys, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		table = null;
+	}
+
+	// ----- Lookup -----------------------------------------------------------
+	private int indexOf(String key)
+	{
+		if (key == null)
+			return -1;
+		if (table == null)
+		{
+			for (int i = 0; i < size; i++)
+				if (key.equals(keys[i]))
+					return i;
+			return -1;
+		}
+
+		int mask = table.length - 1;
+		for (int slot = spread(key.hashCode()) & mask; ; slot = (slot + 1) & mask)
+		{
+			int entry = table[slot];
+			if (entry == 0)
+				return -1;
+			if (key.equals(keys[entry - 1]))
+				return entry - 1;
+		}
+	}
+
+	/**
+	 * Builds a table at most half full for the current entries.
+	 */
+	private void rehash()
+	{
+		int capacity = LINEAR_LIMIT * 4;
+		while (capacity < size * 2)
+			capacity *= 2;
+		int[] newTable = new int[capacity];
+		for (int i = 0; i < size; i++)
+			insert(newTable, keys[i], i);
+		table = newTable;
+	}
+
+	private static void insert(int[] table, String key, int index)
+	{
+		int mask = table.length - 1;
+		int slot = spread(key.hashCode()) & mask;
+		while (table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = index + 1;
+	}
+
+	private static int spread(int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < size; i++)
+			s.append(i == 0 ? "" : ", ").append(keys[i]).append('=').append(values[i]);
+		return s.append('}').toString();
+	}
+}
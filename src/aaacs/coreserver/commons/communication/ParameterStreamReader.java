@@ -0,0 +1,198 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads what a ParameterStreamWriter wrote: first the communication, then the
+ * streamed lists one after the other. The elements of a list are decoded one
+ * chunk at a time as they are asked for, so however long the list, only one
+ * chunk is ever held in memory.
+ *
+ * <pre>
+ * ParameterStreamReader reader = new ParameterStreamReader(in);
+ * ActionRequest request = (ActionRequest) reader.getCommunication();
+ * for (String list = reader.nextList(); list != null; list = reader.nextList())
+ *     while (reader.hasNextElement())
+ *         handle(list, reader.nextElement());
+ * </pre>
+ *
+ * If the writer aborted the stream (a list turned out too short), reading
+ * that list fails with an IOException.
+ *
+ * A reader is not thread-safe.
+ */
+public class ParameterStreamReader implements Closeable
+{
+	// ----- Static members ---------------------------------------------------
+	/**
+	 * No chunk is larger than this (a writer never writes chunks of more than
+	 * about 64 KB); anything larger can only be corrupt.
+	 */
+	static final int MAXIMUM_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	// ----- Instance members -------------------------------------------------
+	private final DataInputStream in;
+	private final ActionCommunication communication;
+	private boolean ended = false; // no more lists
+
+	// the list being read, if any
+	private String name = null;
+	private boolean listEnded = true;
+	private byte[] chunk = new byte[0];
+	private BinaryReader reader = null;
+	private int chunkRemaining = 0; // elements left in the chunk
+
+	public ParameterStreamReader(InputStream in) throws IOException
+	{
+		this.in = new DataInputStream(in);
+		communication = BinaryCodec.readFrame(this.in);
+	}
+
+	public ActionCommunication getCommunication() { return communication; }
+
+	/** @return the name of the list being read, or null. */
+	public String getListName() { return name; }
+
+	// ----- Lists ------------------------------------------------------------
+	/**
+	 * Moves on to the next list, skipping whatever is left of the current one.
+	 *
+	 * @return the name of the next list, or null at the end of the stream
+	 */
+	public String nextList() throws IOException
+	{
+		while (!listEnded)
+			skipChunk();
+		name = null;
+		if (ended)
+			return null;
+
+		byte marker = in.readByte();
+		if (marker == ParameterStreamWriter.END_OF_STREAM)
+		{
+			ended = true;
+			return null;
+		}
+		if (marker != ParameterStreamWriter.LIST)
+			throw new StreamCorruptedException("unknown marker " + marker);
+		name = in.readUTF();
+		listEnded = false;
+		chunkRemaining = 0;
+		return name;
+	}
+
+	public boolean hasNextElement() throws IOException
+	{
+		while (chunkRemaining == 0)
+		{
+			if (listEnded || !readChunk())
+				return false;
+		}
+		return true;
+	}
+
+	public Object nextElement() throws IOException
+	{
+		if (!hasNextElement())
+			throw new NoSuchElementException();
+		Object element = BinaryCodec.readValue(reader);
+		chunkRemaining--;
+		if (chunkRemaining == 0 && reader.remaining() != 0)
+			throw new StreamCorruptedException("unexpected bytes after the elements of a chunk");
+		return element;
+	}
+
+	/**
+	 * @return the rest of the current list, as an Iterator; problems reading
+	 * the stream surface as IllegalStateExceptions with the IOException as
+	 * their cause.
+	 */
+	public Iterator<Object> elements()
+	{
+		return new Iterator<Object>()
+		{
+			public boolean hasNext()
+			{
+				try { return hasNextElement(); }
+				catch (IOException e) { throw new IllegalStateException(e); }
+			}
+
+			public Object next()
+			{
+				try { return nextElement(); }
+				catch (IOException e) { throw new IllegalStateException(e); }
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	// ----- Chunks -----------------------------------------------------------
+	/**
+	 * @return false if the list has ended instead
+	 */
+	private boolean readChunk() throws IOException
+	{
+		int length = readChunkLength();
+		if (length == 0)
+			return false;
+		int count = in.readInt();
+		if (count <= 0 || count > length)
+			throw new StreamCorruptedException("impossible element count " + count);
+		if (chunk.length < length)
+			chunk = new byte[length];
+		in.readFully(chunk, 0, length);
+		if (reader == null)
+			reader = new BinaryReader(ByteBuffer.wrap(chunk, 0, length));
+		else
+			reader.reset(ByteBuffer.wrap(chunk, 0, length));
+		chunkRemaining = count;
+		return true;
+	}
+
+	private void skipChunk() throws IOException
+	{
+		chunkRemaining = 0;
+		int length = readChunkLength();
+		if (length == 0)
+			return;
+		in.readInt();
+		while (length > 0)
+		{
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0)
+			{
+				in.readByte(); // EOFException at the end of the stream
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	private int readChunkLength() throws IOException
+	{
+		int length = in.readInt();
+		if (length == ParameterStreamWriter.ABORTED)
+			throw new IOException("stream aborted by its writer: list " + name + " is too short");
+		if (length < 0 || length > MAXIMUM_CHUNK_SIZE)
+			throw new StreamCorruptedException("impossible chunk length " + length);
+		if (length == 0)
+			listEnded = true;
+		return length;
+	}
+}
@@ -0,0 +1,268 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import aaacs.coreserver.commons.exceptions.ValidationException;
+import aaacs.coreserver.commons.validation.MsgArgsPair;
+import aaacs.coreserver.commons.validation.ParameterValidationPlan;
+import aaacs.coreserver.commons.validation.ParameterValidator;
+import aaacs.coreserver.commons.validation.ValidationResults;
+
+/**
+ * Sends an ActionRequest (or any other communication) followed by any number of
+ * streamed lists: parameters too large to be built in memory first, such as
+ * the hundreds of thousands of entries of a feed import. Each element is
+ * checked as it is added and encoded straight away; only the current chunk of
+ * about 64 KB is ever held in memory. A ParameterStreamReader reads it all on
+ * the other side.
+ *
+ * The stream is: the communication, as encoded by BinaryCodec and preceded by
+ * its length; then for each list a marker byte, its name, and its chunks, each
+ * made up of its length, its number of elements, and the elements themselves
+ * (as BinaryCodec values); a zero length ends the list and a zero marker the
+ * stream. A list that turns out too short for its validator is ended with a
+ * length of -1 instead, which aborts the stream: the reader fails rather than
+ * take the list for complete, and the writer can only be closed.
+ *
+ * A writer is not thread-safe.
+ */
+public class ParameterStreamWriter implements Closeable
+{
+	// ----- Static members ---------------------------------------------------
+	static final byte END_OF_STREAM = 0;
+	static final byte LIST = 1;
+	static final int ABORTED = -1; // instead of the length of a chunk
+	static final int CHUNK_SIZE = 64 * 1024;
+
+	// ----- Instance members -------------------------------------------------
+	private final DataOutputStream out;
+	private final BinaryWriter chunk = new BinaryWriter(CHUNK_SIZE + 1024);
+	private final ValidationResults results = new ValidationResults();
+	private boolean closed = false;
+	private boolean aborted = false; // see the class comment
+
+	// the list being written, if any
+	private String name = null;
+	private Class<?> elementClass = null;
+	private ParameterValidationPlan plan = null;
+	private int count = 0; // elements in the list
+	private int chunkCount = 0; // elements in the chunk
+
+	public ParameterStreamWriter(OutputStream out, ActionCommunication communication)
+		throws IOException
+	{
+		this.out = new DataOutputStream(out);
+		BinaryCodec.writeFrame(this.out, communication);
+	}
+
+	// ----- Lists ------------------------------------------------------------
+	/**
+	 * Starts a list of elements of <code>elementClass</code> (Byte through
+	 * Timestamp), which are checked with <code>validator</code> (if not null)
+	 * just as a whole list would be: each element, and the size of the list.
+	 * The previous list must have been ended.
+	 */
+	public ParameterStreamWriter beginList(String listName, Class<?> listElementClass,
+		ParameterValidator validator) throws IOException
+	{
+		if (listName == null) throw new IllegalArgumentException("parameterName.Null");
+		checkOpen();
+		if (name != null) throw new IllegalStateException("stream.ListNotEnded");
+
+		plan = (validator == null ? new ParameterValidator().getPlan() : validator.getPlan());
+		// fails right away on an unsupported class
+		plan.checkElement(listElementClass, null, results, 0);
+		results.reset();
+
+		name = listName;
+		elementClass = listElementClass;
+		count = 0;
+		out.writeByte(LIST);
+		out.writeUTF(listName);
+		return this;
+	}
+
+	/**
+	 * Checks and adds the next element of the current list. An element that
+	 * fails its checks is not added, and the list may go on.
+	 */
+	public ParameterStreamWriter add(Object element) throws IOException, ValidationException
+	{
+		checkList();
+		if (!plan.checkElement(elementClass, element, results, count))
+			reject();
+		checkSize();
+		BinaryCodec.writeValue(chunk, element);
+		added();
+		return this;
+	}
+
+	/**
+	 * The same for a list of Longs, without boxing the element.
+	 */
+	public ParameterStreamWriter add(long element) throws IOException, ValidationException
+	{
+		checkList();
+		if (elementClass != Long.class)
+			return add(Long.valueOf(element));
+		if (plan.isCheckIndividualElements() && !plan.checkLong(element, results, count))
+			reject();
+		checkSize();
+		chunk.writeByte(BinaryCodec.LONG);
+		chunk.writeSignedVarLong(element);
+		added();
+		return this;
+	}
+
+	public ParameterStreamWriter add(int element) throws IOException, ValidationException
+	{
+		checkList();
+		if (elementClass != Integer.class)
+			return add(Integer.valueOf(element));
+		if (plan.isCheckIndividualElements() && !plan.checkInteger(element, results, count))
+			reject();
+		checkSize();
+		chunk.writeByte(BinaryCodec.INTEGER);
+		chunk.writeSignedVarInt(element);
+		added();
+		return this;
+	}
+
+	public ParameterStreamWriter add(double element) throws IOException, ValidationException
+	{
+		checkList();
+		if (elementClass != Double.class)
+			return add(Double.valueOf(element));
+		if (plan.isCheckIndividualElements() && !plan.checkDouble(element, results, count))
+			reject();
+		checkSize();
+		chunk.writeByte(BinaryCodec.DOUBLE);
+		chunk.writeDouble(element);
+		added();
+		return this;
+	}
+
+	/**
+	 * Ends the current list.
+	 *
+	 * @return the number of elements in it
+	 */
+	public int endList() throws IOException, ValidationException
+	{
+		checkList();
+		Integer minimum = plan.getValidMinimumSize();
+		String listName = name;
+		int listCount = count;
+		if (!finishList())
+		{
+			results.add(listName, new MsgArgsPair(
+				"list.TooShort", new Object[] { minimum }));
+			reject(listName);
+		}
+		return listCount;
+	}
+
+	/**
+	 * Ends the current list (if any) and the stream, and closes the underlying
+	 * output stream. If the current list is too short, or the stream was
+	 * aborted already, the stream is left aborted rather than ended.
+	 */
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		try
+		{
+			if (name != null)
+				finishList();
+			if (!aborted)
+				out.writeByte(END_OF_STREAM);
+			out.flush();
+		}
+		finally
+		{
+			closed = true;
+			out.close();
+		}
+	}
+
+	// ----- Helpers ----------------------------------------------------------
+	private void checkOpen()
+	{
+		if (closed) throw new IllegalStateException("stream.Closed");
+		if (aborted) throw new IllegalStateException("stream.Aborted");
+	}
+
+	/**
+	 * Ends the current list, or aborts the stream if the list is too short.
+	 *
+	 * @return false if the stream was aborted
+	 */
+	private boolean finishList() throws IOException
+	{
+		Integer minimum = plan.getValidMinimumSize();
+		flushChunk();
+		name = null;
+		plan = null;
+		if (minimum != null && count < minimum)
+		{
+			out.writeInt(ABORTED);
+			aborted = true;
+			return false;
+		}
+		out.writeInt(0);
+		return true;
+	}
+
+	private void checkList()
+	{
+		checkOpen();
+		if (name == null) throw new IllegalStateException("stream.NoList");
+	}
+
+	private void checkSize() throws ValidationException
+	{
+		Integer maximum = plan.getValidMaximumSize();
+		if (maximum != null && count >= maximum)
+		{
+			results.add(name, new MsgArgsPair(
+				"list.TooLong", new Object[] { maximum }));
+			reject();
+		}
+	}
+
+	private void reject() throws ValidationException
+	{
+		reject(name);
+	}
+
+	private void reject(String listName) throws ValidationException
+	{
+		ValidationException e = new ValidationException(listName, null,
+			"list.Invalid", results.takeResults());
+		results.reset();
+		throw e;
+	}
+
+	private void added() throws IOException
+	{
+		count++;
+		chunkCount++;
+		if (chunk.size() >= CHUNK_SIZE)
+			flushChunk();
+	}
+
+	private void flushChunk() throws IOException
+	{
+		if (chunkCount == 0)
+			return;
+		out.writeInt(chunk.size());
+		out.writeInt(chunkCount);
+		chunk.writeTo(out);
+		chunk.reset();
+		chunkCount = 0;
+	}
+}
@@ -1,13 +1,18 @@
 package aaacs.coreserver.commons.communication;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
 import java.sql.Date;
 import java.sql.Timestamp;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import aaacs.coreserver.commons.validation.ParameterTypeChecker;
 import aaacs.coreserver.commons.validation.ParameterValidator;
 
 /**
@@ -21,15 +26,36 @@ import aaacs.coreserver.commons.validation.ParameterValidator;
  * - The supported types in ParameterValidator
  *   Object, Byte, Short, Integer, Long, Float, Double, String, Date, Timestamp, Boolean
  * - Arrays of the afore-mentioned supported types
+ * - Arrays of the primitive types (byte[], short[], int[], long[], float[],
+ *   double[], boolean[])
+ * - Binary data, as a read-only ByteBuffer
  * - Lists of the afore-mentioned types
  * - Maps with keys & values of the AMT *PLUS* other Maps/Arrays/ for values
+ *
+ * Serialization only writes the parameters themselves, in the binary format of
+ * BinaryCodec: a type tag and a compact payload per value, and each name
+ * spelled out only once per Parameters. The validator configuration is never
+ * written.
+ *
+ * The validation settings (the setValid...() etc. methods below) are kept in a
+ * separate ParameterValidator, which is only created when one of them is first
+ * used, or which can be shared between many Parameters with setValidator(). A
+ * plain, data-carrying Parameters is thus a map and nothing else. A shared
+ * validator is copied before the first of these methods changes it, so that
+ * the other Parameters sharing it are unaffected.
  */
-public class Parameters extends ParameterValidator implements Serializable
+public class Parameters implements Externalizable
 {
 	/**
 	 * Serialization Version Number
 	 */
-	private static final long serialVersionUID = 1000L;
+	private static final long serialVersionUID = 1002L;
+
+	/**
+	 * Stands in for the validator of Parameters that have none, when checking
+	 * the values stored: it has the default settings and is never changed.
+	 */
+	private static final ParameterValidator defaultValidator = new ParameterValidator();
 
 	/*
 	 * Kinds of parameters to allow:
@@ -40,155 +66,264 @@ public class Parameters extends ParameterValidator implements Serializable
 	 * - Maps with keys & values of the AMT *PLUS* other Maps/Arrays/ for values
 	 */
 	// ----- Instance variables -----------------------------------------------
-	private LinkedHashMap<String, Object> parameters;
+	private ParameterMap parameters;
+	private ParameterValidator validator = null; // created when first needed
+	private boolean validatorShared = false; // see setValidator()
 
 	// ----- Constructors -----------------------------------------------------
 	public Parameters()
 	{
-		parameters = new LinkedHashMap<String, Object>();
+		parameters = new ParameterMap();
 	}
 
 	// ----- Management methods -----------------------------------------------
 	public int size() { return parameters.size(); }
 	public void clearParameters() { parameters.clear(); }
+
+	/**
+	 * Brings the parameters back to the state of new ones, so that they can
+	 * be reused (see CommunicationPool): no parameters, and no validator. The
+	 * storage keeps its capacity.
+	 */
+	public void reset()
+	{
+		parameters.clear();
+		validator = null;
+		validatorShared = false;
+	}
+
+	/**
+	 * The parameters themselves, for encoding and decoding them (see
+	 * BinaryCodec) without going through the checks all over again.
+	 */
+	ParameterMap getStorage() { return parameters; }
+
+	// ----- Serialization ----------------------------------------------------
+	public void writeExternal(ObjectOutput out) throws IOException
+	{
+		BinaryWriter writer = new BinaryWriter(256);
+		BinaryCodec.writeParameters(writer, this);
+		out.writeByte(BinaryCodec.VERSION);
+		out.writeInt(writer.size());
+		out.write(writer.toByteArray());
+	}
+
+	public void readExternal(ObjectInput in) throws IOException
+	{
+		byte version = in.readByte();
+		if (version != BinaryCodec.VERSION)
+			throw new StreamCorruptedException("unsupported format version " + version);
+		int length = in.readInt();
+		if (length < 0)
+			throw new StreamCorruptedException("negative length");
+		if (length > BinaryCodec.getMaximumFrameSize())
+			throw new StreamCorruptedException("parameters of " + length + " bytes are too large");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		BinaryReader reader = new BinaryReader(bytes);
+		parameters.clear();
+		BinaryCodec.readParameters(reader, this);
+		if (reader.remaining() != 0)
+			throw new StreamCorruptedException("unexpected bytes after the parameters");
+	}
 	
+	// ----- The validator ----------------------------------------------------
+	/**
+	 * @return the validator of these parameters, creating one (with the default
+	 * settings) if there is none yet. A validator shared with setValidator() is
+	 * returned as it is: changing it changes it for all that share it.
+	 */
+	public ParameterValidator getValidator()
+	{
+		if (validator == null)
+			validator = new ParameterValidator();
+		return validator;
+	}
+
+	/**
+	 * Uses <code>inValidator</code> from now on, e.g. one validator configured
+	 * once and shared by many Parameters. The setters and clearChecks() below
+	 * never change it: the first of them to be called works on a copy of it
+	 * from then on. Null goes back to the default settings.
+	 */
+	public Parameters setValidator(ParameterValidator inValidator)
+	{
+		validator = inValidator;
+		validatorShared = (inValidator != null);
+		return this;
+	}
+
+	public boolean hasValidator() { return validator != null; }
+
+	public Parameters clearChecks()
+	{
+		if (validator != null)
+			ownValidator().clearChecks();
+		return this;
+	}
+
+	/**
+	 * @return the validator, to be changed: a copy of it, from now on, if it is
+	 * shared (see setValidator())
+	 */
+	private ParameterValidator ownValidator()
+	{
+		if (validatorShared)
+		{
+			validator = validator.copy();
+			validatorShared = false;
+		}
+		return getValidator();
+	}
+
 	// ----- Methods to expose FieldValidator/ParameterValidator checks -------
-	// We need to wrap the super class's setters to maintain proper chaining, otherwise
-	// "return this" in the super class will only return a reference to an object with
-	// that class obviously - not good in a chain of setters mixed with setters from
-	// *this* (the derived) class.
+	// These wrap the setters of the validator to maintain proper chaining: they
+	// return the Parameters rather than the validator.
 
 	// from ParameterValidator
 	public Parameters setParameterName(String parameterName)
 	{
-		super.setName(parameterName);
+		ownValidator().setName(parameterName);
 		return this;
 	}
 
 	public Parameters setAllowNullStructure(Boolean allowNullStructure)
 	{
-		super.setAllowNullStructure(allowNullStructure);
+		ownValidator().setAllowNullStructure(allowNullStructure);
 		return this;
 	}
 
 	public Parameters setCheckIndividualElements(Boolean checkIndividualElements)
 	{
-		super.setCheckIndividualElements(checkIndividualElements);
+		ownValidator().setCheckIndividualElements(checkIndividualElements);
+		return this;
+	}
+
+	public Parameters setParallelThreshold(Integer parallelThreshold)
+	{
+		ownValidator().setParallelThreshold(parallelThreshold);
+		return this;
+	}
+
+	public Parameters setValidChecksum(Long validChecksum)
+	{
+		ownValidator().setValidChecksum(validChecksum);
 		return this;
 	}
 
 	public Parameters setLocale(Locale locale)
 	{
-		super.setLocale(locale);
+		ownValidator().setLocale(locale);
 		return this;
 	}
 
 	public Parameters setValidMaximumSize(Integer validMaximumSize)
 	{
-		super.setValidMaximumSize(validMaximumSize);
+		ownValidator().setValidMaximumSize(validMaximumSize);
 		return this;
 	}
 
 	public Parameters setValidMinimumSize(Integer validMinimumSize)
 	{
-		super.setValidMinimumSize(validMinimumSize);
+		ownValidator().setValidMinimumSize(validMinimumSize);
 		return this;
 	}
 
 	// from FieldValidator
 	public Parameters setAllowNullElement(Boolean allowNull)
 	{
-		super.setAllowNullElement(allowNull);
+		ownValidator().setAllowNullElement(allowNull);
 		return this;
 	}
 
 	public Parameters setInvalidChoices(Object[] invalidChoices)
 	{
-		super.setInvalidChoices(invalidChoices);
+		ownValidator().setInvalidChoices(invalidChoices);
 		return this;
 	}
 
 	public Parameters setInvalidMaximum(Double invalidMaximum)
 	{
-		super.setInvalidMaximum(invalidMaximum);
+		ownValidator().setInvalidMaximum(invalidMaximum);
 		return this;
 	}
 
 	public Parameters setInvalidMinimum(Double invalidMinimum)
 	{
-		super.setInvalidMinimum(invalidMinimum);
+		ownValidator().setInvalidMinimum(invalidMinimum);
 		return this;
 	}
 
 	public Parameters setInvalidRegex(String invalidRegex)
 	{
-		super.setInvalidRegex(invalidRegex);
+		ownValidator().setInvalidRegex(invalidRegex);
 		return this;
 	}
 
 	public Parameters setUseInvalidChoicesAs(String useInvalidChoicesAs)
 	{
-		super.setUseInvalidChoicesAs(useInvalidChoicesAs);
+		ownValidator().setUseInvalidChoicesAs(useInvalidChoicesAs);
 		return this;
 	}
 
 	public Parameters setUseValidChoicesAs(String useValidChoicesAs)
 	{
-		super.setUseValidChoicesAs(useValidChoicesAs);
+		ownValidator().setUseValidChoicesAs(useValidChoicesAs);
 		return this;
 	}
 
 	public Parameters setValidChoices(Object[] validChoices)
 	{
-		super.setValidChoices(validChoices);
+		ownValidator().setValidChoices(validChoices);
 		return this;
 	}
 
 	public Parameters setMaxFracLength(Integer maxFracLength)
 	{
-		super.setMaxFracLength(maxFracLength);
+		ownValidator().setMaxFracLength(maxFracLength);
 		return this;
 	}
 
 	public Parameters setValidMaximum(Double validMaximum)
 	{
-		super.setValidMaximum(validMaximum);
+		ownValidator().setValidMaximum(validMaximum);
 		return this;
 	}
 
 	public Parameters setValidMinimum(Double validMinimum)
 	{
-		super.setValidMinimum(validMinimum);
+		ownValidator().setValidMinimum(validMinimum);
 		return this;
 	}
 
 	public Parameters setValidRegex(String validRegex)
 	{
-		super.setValidRegex(validRegex);
+		ownValidator().setValidRegex(validRegex);
 		return this;
 	}
 
 	public Parameters setInvalidEarliest(Timestamp invalidEarliest)
 	{
-		super.setInvalidEarliest(invalidEarliest);
+		ownValidator().setInvalidEarliest(invalidEarliest);
 		return this;
 	}
 
 	public Parameters setInvalidLatest(Timestamp invalidLatest)
 	{
-		super.setInvalidLatest(invalidLatest);
+		ownValidator().setInvalidLatest(invalidLatest);
 		return this;
 	}
 
 	public Parameters setValidEarliest(Timestamp validEarliest)
 	{
-		super.setValidEarliest(validEarliest);
+		ownValidator().setValidEarliest(validEarliest);
 		return this;
 	}
 
 	public Parameters setValidLatest(Timestamp validLatest)
 	{
-		super.setValidLatest(validLatest);
+		ownValidator().setValidLatest(validLatest);
 		return this;
 	}
 
@@ -216,17 +351,57 @@ public class Parameters extends ParameterValidator implements Serializable
 	public Date[] getDateArray(String name) { return (Date[]) parameters.get(name); }
 	public Timestamp[] getTimestampArray(String name) { return (Timestamp[]) parameters.get(name); }
 
+	// ----- Get primitive array types from parameters ------------------------
+	public byte[] getPrimitiveByteArray(String name) { return (byte[]) parameters.get(name); }
+	public short[] getPrimitiveShortArray(String name) { return (short[]) parameters.get(name); }
+	public int[] getPrimitiveIntArray(String name) { return (int[]) parameters.get(name); }
+	public long[] getPrimitiveLongArray(String name) { return (long[]) parameters.get(name); }
+	public float[] getPrimitiveFloatArray(String name) { return (float[]) parameters.get(name); }
+	public double[] getPrimitiveDoubleArray(String name) { return (double[]) parameters.get(name); }
+	public boolean[] getPrimitiveBooleanArray(String name) { return (boolean[]) parameters.get(name); }
+
+	// ----- Get binary data from parameters ----------------------------------
+	/**
+	 * @return a read-only view of the binary data (whose position the caller
+	 * is free to move).
+	 */
+	public ByteBuffer getBinary(String name)
+	{
+		ByteBuffer binary = (ByteBuffer) parameters.get(name);
+		return (binary == null ? null : binary.duplicate());
+	}
+
 	// ----- Get collection types from parameters -----------------------------
 	// see comment after class
 	public Object[] getArray(String name) { return (Object[]) parameters.get(name); }
 	public List getList(String name) { return (List) parameters.get(name); }
 	public Map getMap(String name) { return (Map) parameters.get(name); }
 
-	// ----- Mini helper method for checking name/value nulls -----------------
+	// ----- Mini helper methods for checking name/value nulls ----------------
 	protected void checkNulls(String name, Object value, String msgNameNull, String msgValueNull)
 	{
 		if (name == null) throw new IllegalArgumentException(msgNameNull);
-		checkNullStructure(value, msgValueNull);
+		checker().checkNullStructure(value, msgValueNull);
+	}
+
+	protected void checkArrayNullElements(Object[] value)
+	{
+		checker().checkArrayNullElements(value);
+	}
+
+	protected void checkListNullElements(List<?> value)
+	{
+		checker().checkListNullElements(value);
+	}
+
+	protected void checkMapNullKeysValues(Map<?, ?> value)
+	{
+		checker().checkMapNullKeysValues(value);
+	}
+
+	private ParameterValidator checker()
+	{
+		return (validator != null ? validator : defaultValidator);
 	}
 
 	// ----- Set simple types into parameters ---------------------------------
@@ -356,6 +531,64 @@ public class Parameters extends ParameterValidator implements Serializable
 		parameters.put(name, value);
 	}
 
+	// ----- Set primitive arrays into parameters -----------------------------
+	// These hold many numbers far more compactly than the wrapper arrays, and
+	// their elements can never be null, so there is nothing to scan for.
+	public void setPrimitiveByteArray(String name, byte[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveShortArray(String name, short[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveIntArray(String name, int[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveLongArray(String name, long[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveFloatArray(String name, float[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveDoubleArray(String name, double[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	public void setPrimitiveBooleanArray(String name, boolean[] value)
+	{
+		checkNulls(name, value, "parameterName.Null", "array.Null");
+		parameters.put(name, value);
+	}
+
+	// ----- Set binary data into parameters ----------------------------------
+	/**
+	 * Stores the remaining bytes of <code>value</code> (a heap or direct
+	 * buffer) without copying them, as a read-only view: the contents must
+	 * therefore not be changed afterwards. The position of <code>value</code>
+	 * is not moved.
+	 */
+	public void setBinary(String name, ByteBuffer value)
+	{
+		checkNulls(name, value, "parameterName.Null", "binary.Null");
+		parameters.put(name, (value == null ? null : value.slice().asReadOnlyBuffer()));
+	}
+
 	// ----- Set lists into parameters ----------------------------------------
 	public void setByteList(String name, List<Byte> value)
 	{
@@ -438,7 +671,7 @@ public class Parameters extends ParameterValidator implements Serializable
 			if (keyClasses.length != valueClasses.length)
 				throw new IllegalArgumentException("map.KeyValueClassDisparity");
 			checkArrayNullElements(value);
-			checkArrayTypesRecursively(value, keyClasses, valueClasses, 0);
+			ParameterTypeChecker.checkArray(value, keyClasses, valueClasses, 0);
 		}
 		parameters.put(name, value);
 	}
@@ -453,7 +686,7 @@ public class Parameters extends ParameterValidator implements Serializable
 			if (keyClasses.length != valueClasses.length)
 				throw new IllegalArgumentException("map.KeyValueClassDisparity");
 			checkListNullElements(value);
-			checkListTypesRecursively(value, keyClasses, valueClasses, 0);
+			ParameterTypeChecker.checkList(value, keyClasses, valueClasses, 0);
 		}
 		parameters.put(name, value);
 	}
@@ -468,7 +701,7 @@ public class Parameters extends ParameterValidator implements Serializable
 			if (keyClasses.length != valueClasses.length)
 				throw new IllegalArgumentException("map.KeyValueClassDisparity");
 			checkMapNullKeysValues(value);
-			checkMapTypesRecursively(value, keyClasses, valueClasses, 0);
+			ParameterTypeChecker.checkMap(value, keyClasses, valueClasses, 0);
 		}
 		parameters.put(name, value);
 	}
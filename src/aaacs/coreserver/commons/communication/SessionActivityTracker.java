@@ -0,0 +1,327 @@
+package aaacs.coreserver.commons.communication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import aaacs.coreserver.commons.utilities.Clock;
+
+/**
+ * Keeps track of when each user was last active, in memory, and only writes
+ * it through to wherever sessions are kept (a Sink, e.g. the database) now and
+ * then, in batches.
+ *
+ * Each request of a user records its activity (see refresh()), which is cheap:
+ * users are spread over stripes, each with a lock of its own. But the activity
+ * is only propagated - to the token, by refreshing its time, and to the sink -
+ * once the user has moved a given fraction into the inactivity window (see
+ * LoginToken.getInactivityTimeout()) since it was last propagated: with the
+ * default of a quarter, a user busy all day is written out every 5 minutes
+ * rather than at every request, and never comes within three quarters of the
+ * timeout.
+ *
+ * The activity propagated is written out by flush(), which whichever request
+ * comes in calls once there is a batch's worth of it, or once the flush
+ * interval has passed; there is no thread of its own. Users inactive for
+ * longer than the timeout are forgotten when flushing.
+ *
+ * A tracker is safe for concurrent use.
+ */
+public class SessionActivityTracker
+{
+	/**
+	 * Where the activity is written out to.
+	 */
+	public interface Sink
+	{
+		/**
+		 * @param activity the time each user (by userIdk) was last active
+		 */
+		void writeActivity(Map<Long, Long> activity) throws Exception;
+	}
+
+	/**
+	 * The activity of one user.
+	 */
+	private static final class Activity
+	{
+		long last; // last active
+		long propagated; // last propagated
+		boolean dirty = false; // propagated but not yet written out
+
+		Activity(long now)
+		{
+			last = now;
+			propagated = now;
+		}
+	}
+
+	/**
+	 * Some of the users, and those of their activities yet to be written.
+	 */
+	private static final class Stripe
+	{
+		final HashMap<Long, Activity> activities = new HashMap<Long, Activity>();
+		final List<Long> dirty = new ArrayList<Long>();
+	}
+
+	// ----- Static members ---------------------------------------------------
+	private static final Logger logger = Logger.getLogger(SessionActivityTracker.class.getName());
+
+	// ----- Instance members -------------------------------------------------
+	private final Stripe[] stripes;
+	private final Sink sink;
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicLong lastFlush = new AtomicLong(Clock.getDefault().currentTimeMillis());
+	private volatile double refreshFraction = 0.25;
+	private volatile int batchSize = 500;
+	private volatile long flushInterval = 10 * 1000;
+
+	/**
+	 * @param stripeCount how many stripes (rounded up to a power of 2)
+	 */
+	public SessionActivityTracker(Sink inSink, int stripeCount)
+	{
+		if (inSink == null) throw new IllegalArgumentException("sink.Null");
+		int count = 1;
+		while (count < stripeCount && count < (1 << 16))
+			count <<= 1;
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++)
+			stripes[i] = new Stripe();
+		sink = inSink;
+	}
+
+	public SessionActivityTracker(Sink inSink)
+	{
+		this(inSink, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	public double getRefreshFraction() { return refreshFraction; }
+
+	/**
+	 * @param fraction how far into the inactivity window a user must have moved
+	 * for the activity to be propagated, from 0 (at every request) to 0.9
+	 */
+	public void setRefreshFraction(double fraction)
+	{
+		if (!(fraction >= 0 && fraction <= 0.9))
+			throw new IllegalArgumentException("fraction.OutOfRange");
+		refreshFraction = fraction;
+	}
+
+	public int getBatchSize() { return batchSize; }
+	public void setBatchSize(int size)
+	{
+		batchSize = (size < 1 ? 1 : size);
+	}
+
+	public long getFlushInterval() { return flushInterval; }
+	public void setFlushInterval(long millis)
+	{
+		flushInterval = (millis < 0 ? 0 : millis);
+	}
+
+	/** @return how many users' activity is waiting to be written out */
+	public int getPendingCount() { return pending.get(); }
+
+	// ----- Recording --------------------------------------------------------
+	/**
+	 * Records that the user of the token is active now, refreshing the time of
+	 * the token if the activity is propagated. A cancelled token, or one of an
+	 * unsupported version, is ignored.
+	 *
+	 * @return true if the activity was propagated
+	 */
+	public boolean refresh(LoginToken token)
+	{
+		if (token.isCancelled() || !token.isValidVersion())
+			return false;
+		long now = Clock.getDefault().currentTimeMillis();
+		boolean propagated = record(token.getUserIdk(), now);
+		if (propagated)
+			token.refreshTokenTime(now);
+		flushIfDue(now);
+		return propagated;
+	}
+
+	/**
+	 * @return when the user was last active, as far as this tracker knows, or
+	 * 0 if it does not know the user
+	 */
+	public long getLastActivity(long userIdk)
+	{
+		Stripe stripe = stripe(userIdk);
+		synchronized (stripe)
+		{
+			Activity activity = stripe.activities.get(userIdk);
+			return (activity == null ? 0 : activity.last);
+		}
+	}
+
+	/**
+	 * Forgets the user, e.g. on logout; activity not yet written out is lost.
+	 */
+	public void forget(long userIdk)
+	{
+		Stripe stripe = stripe(userIdk);
+		synchronized (stripe)
+		{
+			Activity activity = stripe.activities.remove(userIdk);
+			if (activity != null && activity.dirty)
+			{
+				stripe.dirty.remove(Long.valueOf(userIdk));
+				pending.decrementAndGet();
+			}
+		}
+	}
+
+	private boolean record(long userIdk, long now)
+	{
+		Stripe stripe = stripe(userIdk);
+		synchronized (stripe)
+		{
+			Activity activity = stripe.activities.get(userIdk);
+			if (activity == null)
+			{
+				stripe.activities.put(userIdk, new Activity(now));
+				markDirty(stripe, userIdk, stripe.activities.get(userIdk));
+				return true;
+			}
+			if (now > activity.last)
+				activity.last = now;
+			long threshold = (long) (refreshFraction * LoginToken.getInactivityTimeout());
+			if (activity.last - activity.propagated < threshold)
+				return false;
+			activity.propagated = activity.last;
+			markDirty(stripe, userIdk, activity);
+			return true;
+		}
+	}
+
+	private void markDirty(Stripe stripe, long userIdk, Activity activity)
+	{
+		if (activity.dirty)
+			return;
+		activity.dirty = true;
+		stripe.dirty.add(userIdk);
+		pending.incrementAndGet();
+	}
+
+	// ----- Writing out ------------------------------------------------------
+	/**
+	 * Writes out all the activity propagated so far, in batches, and forgets
+	 * the users inactive for longer than the timeout. If the sink fails, the
+	 * activity of the batch stays pending, to be written by the next flush.
+	 *
+	 * @return how many users' activity was written out
+	 * @throws IllegalStateException with the failure of the sink as its cause
+	 */
+	public int flush()
+	{
+		lastFlush.set(Clock.getDefault().currentTimeMillis());
+		int written = 0;
+		Map<Long, Long> batch = new LinkedHashMap<Long, Long>();
+		for (Stripe stripe : stripes)
+		{
+			drain(stripe, batch);
+			if (batch.size() >= batchSize)
+			{
+				written += write(batch);
+				batch = new LinkedHashMap<Long, Long>();
+			}
+		}
+		if (!batch.isEmpty())
+			written += write(batch);
+		return written;
+	}
+
+	private void flushIfDue(long now)
+	{
+		long last = lastFlush.get();
+		if ((pending.get() >= batchSize || now - last >= flushInterval) &&
+			lastFlush.compareAndSet(last, now))
+		{
+			try
+			{
+				flush();
+			}
+			catch (IllegalStateException e)
+			{
+				// the request that happened to flush is not to fail for it
+				logger.log(Level.WARNING, e.getMessage(), e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Moves the activity to write out of the stripe into the batch.
+	 */
+	private void drain(Stripe stripe, Map<Long, Long> batch)
+	{
+		long now = Clock.getDefault().currentTimeMillis();
+		long timeout = LoginToken.getInactivityTimeout();
+		synchronized (stripe)
+		{
+			for (Long userIdk : stripe.dirty)
+			{
+				Activity activity = stripe.activities.get(userIdk);
+				activity.dirty = false;
+				batch.put(userIdk, activity.propagated);
+			}
+			pending.addAndGet(-stripe.dirty.size());
+			stripe.dirty.clear();
+
+			for (Iterator<Activity> i = stripe.activities.values().iterator(); i.hasNext(); )
+				if (now > i.next().last + timeout)
+					i.remove();
+		}
+	}
+
+	private int write(Map<Long, Long> batch)
+	{
+		try
+		{
+			sink.writeActivity(batch);
+			return batch.size();
+		}
+		catch (Exception e)
+		{
+			requeue(batch);
+			throw new IllegalStateException("activity.SinkFailed", e);
+		}
+	}
+
+	private void requeue(Map<Long, Long> batch)
+	{
+		for (Map.Entry<Long, Long> entry : batch.entrySet())
+		{
+			long userIdk = entry.getKey();
+			Stripe stripe = stripe(userIdk);
+			synchronized (stripe)
+			{
+				Activity activity = stripe.activities.get(userIdk);
+				if (activity == null)
+				{
+					activity = new Activity(entry.getValue());
+					stripe.activities.put(userIdk, activity);
+				}
+				markDirty(stripe, userIdk, activity);
+			}
+		}
+	}
+
+	private Stripe stripe(long userIdk)
+	{
+		int h = (int) (userIdk ^ (userIdk >>> 32));
+		h ^= (h >>> 16);
+		return stripes[h & (stripes.length - 1)];
+	}
+}
@@ -58,6 +58,13 @@ public class ThrowableSnapshot implements Serializable
 		}
 	}
 
+	/**
+	 * Only for restoring a snapshot that was sent over the wire (see
+	 * BinaryCodec); the setters fill in the rest.
+	 */
+	ThrowableSnapshot()
+	{
+	}
 	
 	public String getMessage()
 	{
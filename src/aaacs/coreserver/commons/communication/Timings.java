@@ -0,0 +1,127 @@
+package aaacs.coreserver.commons.communication;
+
+import java.io.Serializable;
+
+import aaacs.coreserver.commons.utilities.Clock;
+
+/**
+ * When a communication went through each phase of its round trip, for telling
+ * whether a slow action is slow on the network, in the codec, in validation,
+ * or in the action itself. A request only carries Timings if asked to (see
+ * ActionCommunication.startTimings()); they then travel with it, come back
+ * with the response (see ActionResponse(ActionCommunication, ...)), and can be
+ * fed to a LatencyAggregator.
+ *
+ * BinaryCodec marks the phases of serialization and deserialization by
+ * itself; the Core Server marks VALIDATED and HANDLED.
+ *
+ * Every mark is a Clock.nanoTime() of the machine where it was made, either
+ * the requester's or the Core Server's: only marks made on the same side (see
+ * Phase.isRequesterSide()) may be subtracted from each other, and the time on
+ * the network is the round trip less the time on the Core Server.
+ */
+public class Timings implements Serializable
+{
+	// ----- Static members ---------------------------------------------------
+	/**
+	 * Serialization Version Number
+	 */
+	private static final long serialVersionUID = 1000L;
+
+	public enum Phase
+	{
+		CREATED (true),
+		SERIALIZED (true),
+		RECEIVED (false),
+		DESERIALIZED (false),
+		VALIDATED (false),
+		HANDLED (false),
+		RESPONSE_SERIALIZED (false),
+		RESPONSE_RECEIVED (true);
+
+		private final boolean requesterSide;
+
+		Phase(boolean inRequesterSide)
+		{
+			requesterSide = inRequesterSide;
+		}
+
+		/**
+		 * @return true if this phase is marked by the requester, false if by
+		 * the Core Server
+		 */
+		public boolean isRequesterSide() { return requesterSide; }
+	}
+
+	private static final Phase[] phases = Phase.values();
+
+	// ----- Instance members -------------------------------------------------
+	private final long[] marks = new long[phases.length];
+	private int marked = 0; // one bit per phase
+
+	/**
+	 * Marks the phase as reached now.
+	 */
+	public Timings mark(Phase phase)
+	{
+		return set(phase, Clock.getDefault().nanoTime());
+	}
+
+	public boolean isMarked(Phase phase)
+	{
+		return (marked & (1 << phase.ordinal())) != 0;
+	}
+
+	/**
+	 * @return the mark of the phase, as a Clock.nanoTime(), or 0 if the phase
+	 * was not marked
+	 */
+	public long getMark(Phase phase)
+	{
+		return marks[phase.ordinal()];
+	}
+
+	/**
+	 * @return the nanoseconds from one phase to another, or -1 if either was
+	 * not marked, or if they were marked on different sides
+	 */
+	public long getDuration(Phase from, Phase to)
+	{
+		if (!isMarked(from) || !isMarked(to) || from.isRequesterSide() != to.isRequesterSide())
+			return -1;
+		return marks[to.ordinal()] - marks[from.ordinal()];
+	}
+
+	/**
+	 * @return the nanoseconds spent on the network both ways (the round trip
+	 * less the time on the Core Server), or -1 if not all the phases needed
+	 * were marked
+	 */
+	public long getNetworkTime()
+	{
+		long roundTrip = getDuration(Phase.SERIALIZED, Phase.RESPONSE_RECEIVED);
+		long server = getDuration(Phase.RECEIVED, Phase.RESPONSE_SERIALIZED);
+		if (roundTrip < 0 || server < 0)
+			return -1;
+		return roundTrip - server;
+	}
+
+	public String toString()
+	{
+		StringBuilder s = new StringBuilder("Timings[");
+		for (int i = 0; i < phases.length; i++)
+			if (isMarked(phases[i]))
+				s.append(s.length() > 8 ? ", " : "").append(phases[i]).append('=').append(marks[i]);
+		return s.append(']').toString();
+	}
+
+	// ----- For BinaryCodec --------------------------------------------------
+	Timings set(Phase phase, long nanoTime)
+	{
+		marks[phase.ordinal()] = nanoTime;
+		marked |= 1 << phase.ordinal();
+		return this;
+	}
+
+	int getMarked() { return marked; }
+}
@@ -0,0 +1,96 @@
+package aaacs.coreserver.commons.utilities;
+
+/**
+ * A coarse clock for stamping times at high rates: its time of day is only
+ * read every <code>resolution</code> milliseconds, by a daemon ticker thread,
+ * and otherwise costs no more than reading a field. It is taken from an
+ * underlying clock (the system clock unless stated otherwise), and never goes
+ * backwards. The nanoTime() is that of the underlying clock, unchanged, as
+ * durations need the precision.
+ *
+ * The ticker runs from start() until stop(); before start(), or after stop(),
+ * the time of day is read from the underlying clock directly.
+ */
+public class CachedClock extends Clock
+{
+	// ----- Instance members -------------------------------------------------
+	private final Clock source;
+	private final long resolution;
+	private volatile long millis;
+	private volatile Thread ticker = null;
+
+	public CachedClock(long inResolution)
+	{
+		this(Clock.SYSTEM, inResolution);
+	}
+
+	public CachedClock(Clock inSource, long inResolution)
+	{
+		if (inSource == null) throw new IllegalArgumentException("clock.Null");
+		if (inResolution < 1) throw new IllegalArgumentException("clock.BadResolution");
+		source = inSource;
+		resolution = inResolution;
+		millis = source.currentTimeMillis();
+	}
+
+	public long getResolution() { return resolution; }
+
+	public synchronized CachedClock start()
+	{
+		if (ticker != null)
+			return this;
+		millis = source.currentTimeMillis();
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run() { tick(); }
+		}, "CachedClock");
+		thread.setDaemon(true);
+		ticker = thread;
+		thread.start();
+		return this;
+	}
+
+	public synchronized void stop()
+	{
+		Thread thread = ticker;
+		ticker = null;
+		if (thread != null)
+			thread.interrupt();
+	}
+
+	public boolean isRunning() { return ticker != null; }
+
+	public long currentTimeMillis()
+	{
+		if (ticker == null)
+			return update();
+		return millis;
+	}
+
+	public long nanoTime() { return source.nanoTime(); }
+
+	private void tick()
+	{
+		Thread self = Thread.currentThread();
+		while (ticker == self)
+		{
+			update();
+			try
+			{
+				Thread.sleep(resolution);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	private long update()
+	{
+		long now = source.currentTimeMillis();
+		if (now > millis)
+			millis = now;
+		return millis;
+	}
+}
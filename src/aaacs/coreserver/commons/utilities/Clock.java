@@ -0,0 +1,58 @@
+package aaacs.coreserver.commons.utilities;
+
+/**
+ * Where the Core Server gets the time from: the time of day in milliseconds,
+ * for anything that is stamped or sent elsewhere (e.g. the times of an
+ * ActionCommunication, or the time of a LoginToken), and a monotonic time in
+ * nanoseconds, for measuring durations. Going through a Clock rather than
+ * System allows cheaper clocks (CachedClock), clocks that never jump
+ * (MonotonicClock), and fixed clocks for testing (FixedClock).
+ *
+ * The default clock is the system clock (SYSTEM): times of day are compared
+ * across Core Servers (e.g. the token time of a LoginToken checked on another
+ * one), so they must follow the system clock, as corrected by NTP. Only
+ * durations rely on nanoTime(), which does not jump when the system clock is
+ * set (see e.g. LoginTokenRegistry, which measures inactivity with it).
+ */
+public abstract class Clock
+{
+	// ----- Static members ---------------------------------------------------
+	/**
+	 * The plain system clock, as it is.
+	 */
+	public static final Clock SYSTEM = new Clock()
+	{
+		public long currentTimeMillis() { return System.currentTimeMillis(); }
+		public long nanoTime() { return System.nanoTime(); }
+	};
+
+	private static volatile Clock defaultClock = SYSTEM;
+	public static Clock getDefault() { return defaultClock; }
+	public static void setDefault(Clock clock)
+	{
+		if (clock != null)
+			defaultClock = clock;
+		else
+			defaultClock = SYSTEM;
+	}
+
+	// ----- The time ---------------------------------------------------------
+	/**
+	 * @return the time of day, in milliseconds since the epoch
+	 */
+	public abstract long currentTimeMillis();
+
+	/**
+	 * @return a time in nanoseconds from some arbitrary origin, which only
+	 * ever increases; only good for measuring durations
+	 */
+	public abstract long nanoTime();
+
+	/**
+	 * @return the nanoseconds since <code>startNanos</code>, a nanoTime()
+	 */
+	public long elapsedNanos(long startNanos)
+	{
+		return nanoTime() - startNanos;
+	}
+}
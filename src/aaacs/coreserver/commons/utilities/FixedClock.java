@@ -0,0 +1,47 @@
+package aaacs.coreserver.commons.utilities;
+
+/**
+ * A clock that only moves when told to, for testing anything that depends on
+ * the time (e.g. that a LoginToken expires after its inactivity timeout).
+ * Its time of day and its nanoTime() always move together.
+ */
+public class FixedClock extends Clock
+{
+	// ----- Instance members -------------------------------------------------
+	private volatile long millis;
+	private volatile long nanos;
+
+	public FixedClock(long inMillis)
+	{
+		millis = inMillis;
+		nanos = 0;
+	}
+
+	public long currentTimeMillis() { return millis; }
+	public long nanoTime() { return nanos; }
+
+	/**
+	 * Sets the time of day; the nanoTime() moves by as much, forwards only.
+	 */
+	public synchronized FixedClock setTimeMillis(long inMillis)
+	{
+		if (inMillis > millis)
+			nanos += (inMillis - millis) * 1000000L;
+		millis = inMillis;
+		return this;
+	}
+
+	public synchronized FixedClock advanceMillis(long delta)
+	{
+		return advanceNanos(delta * 1000000L);
+	}
+
+	public synchronized FixedClock advanceNanos(long delta)
+	{
+		if (delta < 0) throw new IllegalArgumentException("clock.NegativeDelta");
+		long total = (nanos % 1000000L) + delta;
+		nanos += delta;
+		millis += total / 1000000L;
+		return this;
+	}
+}
@@ -0,0 +1,132 @@
+package aaacs.coreserver.commons.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations (or any non-negative longs) in the manner of
+ * HdrHistogram: values are counted in buckets whose width grows with the
+ * value, so that any recorded value is known to within about 3% (2 significant
+ * digits) whether it is a microsecond or an hour, in a fixed 15 KB. Recording
+ * is a few instructions and never allocates; it is safe for concurrent use,
+ * though a reader may see a recording half done.
+ *
+ * Values below SUB_BUCKETS are counted exactly; above, each power of 2 is
+ * split into SUB_BUCKETS / 2 buckets of equal width.
+ */
+public class LatencyHistogram
+{
+	// ----- Static members ---------------------------------------------------
+	static final int SUB_BUCKETS = 64;
+	private static final int HALF = SUB_BUCKETS / 2;
+	private static final int SHIFT = Integer.numberOfTrailingZeros(HALF); // 5
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SHIFT) * HALF;
+
+	// ----- Instance members -------------------------------------------------
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong minimum = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maximum = new AtomicLong(-1);
+
+	/**
+	 * Counts a value; negative values are ignored.
+	 */
+	public void record(long value)
+	{
+		if (value < 0)
+			return;
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value < (current = minimum.get()) && !minimum.compareAndSet(current, value))
+			;
+		while (value > (current = maximum.get()) && !maximum.compareAndSet(current, value))
+			;
+	}
+
+	public long getCount() { return count.get(); }
+
+	/** @return the smallest value recorded, or -1 if none */
+	public long getMinimum()
+	{
+		long value = minimum.get();
+		return (value == Long.MAX_VALUE ? -1 : value);
+	}
+
+	/** @return the largest value recorded, or -1 if none */
+	public long getMaximum() { return maximum.get(); }
+
+	/** @return the exact mean of the values recorded, or 0 if none */
+	public double getMean()
+	{
+		long n = count.get();
+		return (n == 0 ? 0 : (double) sum.get() / n);
+	}
+
+	/**
+	 * @param percentile from 0 to 100
+	 * @return a value at least as large as <code>percentile</code> percent of
+	 * the values recorded (the upper end of its bucket, but never more than the
+	 * maximum), or -1 if none
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile.OutOfRange");
+		long total = count.get();
+		if (total == 0)
+			return -1;
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValue(i), getMaximum());
+		}
+		return getMaximum();
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		minimum.set(Long.MAX_VALUE);
+		maximum.set(-1);
+	}
+
+	public String toString()
+	{
+		return "count=" + getCount() + " min=" + getMinimum() + " mean=" + (long) getMean() +
+			" p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99) +
+			" max=" + getMaximum();
+	}
+
+	// ----- Buckets ----------------------------------------------------------
+	static int index(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		// value >>> shift is in [HALF, SUB_BUCKETS)
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SHIFT;
+		return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+	}
+
+	/**
+	 * @return the largest value counted in the bucket
+	 */
+	static long highestValue(int index)
+	{
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / HALF + 1;
+		long lowest = (long) ((index - SUB_BUCKETS) % HALF + HALF) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
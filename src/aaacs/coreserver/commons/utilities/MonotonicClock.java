@@ -0,0 +1,31 @@
+package aaacs.coreserver.commons.utilities;
+
+/**
+ * A clock whose time of day is the system time when it was created, moved on
+ * by System.nanoTime() since: it never goes backwards, and does not jump when
+ * the system clock is set (only gradual adjustments of the system clock, as
+ * made by NTP, carry over).
+ *
+ * Its time of day is only as right as the system clock was when it was
+ * created, and never corrected since: it is not fit for times that are sent
+ * to, or compared with those of, other machines (see Clock.getDefault()).
+ */
+public class MonotonicClock extends Clock
+{
+	// ----- Instance members -------------------------------------------------
+	private final long originMillis;
+	private final long originNanos;
+
+	public MonotonicClock()
+	{
+		originMillis = System.currentTimeMillis();
+		originNanos = System.nanoTime();
+	}
+
+	public long currentTimeMillis()
+	{
+		return originMillis + (System.nanoTime() - originNanos) / 1000000L;
+	}
+
+	public long nanoTime() { return System.nanoTime(); }
+}
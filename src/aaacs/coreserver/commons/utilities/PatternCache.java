@@ -0,0 +1,133 @@
+package aaacs.coreserver.commons.utilities;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A shared, bounded cache of compiled regular expressions. Compiling a Pattern
+ * is far more expensive than matching with one, and String.matches(),
+ * replaceAll() and friends compile their regex on every single call. Anything
+ * that matches against a regex that is not a compile-time constant should get
+ * its Pattern from here.
+ *
+ * The cache is safe for concurrent use. When it grows beyond its maximum size
+ * the oldest entries are evicted first. The hit/miss/eviction counters are
+ * there to tell whether the maximum size is adequate.
+ */
+public class PatternCache
+{
+	// ----- Static members ---------------------------------------------------
+	private static final ConcurrentHashMap<String, Pattern> patterns =
+		new ConcurrentHashMap<String, Pattern>();
+	// insertion order, for evicting the oldest entries first
+	private static final Queue<Cached> order = new ConcurrentLinkedQueue<Cached>();
+
+	/**
+	 * A regex, with the Pattern it was cached as: once it is evicted and cached
+	 * again, its first entry in the queue is stale and must not evict the new
+	 * Pattern.
+	 */
+	private static final class Cached
+	{
+		final String regex;
+		final Pattern pattern;
+
+		Cached(String inRegex, Pattern inPattern)
+		{
+			regex = inRegex;
+			pattern = inPattern;
+		}
+	}
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+
+	private static volatile int maximumSize = 512;
+	public static int getMaximumSize() { return maximumSize; }
+	public static void setMaximumSize(int size)
+	{
+		if (size < 16)
+			maximumSize = 16; // minimum value: anything less is pointless
+		else
+			maximumSize = size;
+		evict();
+	}
+
+	public static long getHits() { return hits.get(); }
+	public static long getMisses() { return misses.get(); }
+	public static long getEvictions() { return evictions.get(); }
+	public static int size() { return patterns.size(); }
+
+	public static void resetStatistics()
+	{
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	public static void clear()
+	{
+		patterns.clear();
+		order.clear();
+	}
+
+	/**
+	 * Returns the compiled form of the regex, compiling it only if it is not
+	 * already in the cache. Invalid regexes throw PatternSyntaxException just
+	 * like Pattern.compile() does, and are not cached.
+	 */
+	public static Pattern compile(String regex)
+	{
+		Pattern pattern = patterns.get(regex);
+		if (pattern != null)
+		{
+			hits.incrementAndGet();
+			return pattern;
+		}
+
+		misses.incrementAndGet();
+		pattern = Pattern.compile(regex);
+		Pattern previous = patterns.putIfAbsent(regex, pattern);
+		if (previous != null)
+			return previous; // another thread beat us to it; keep one instance
+
+		order.offer(new Cached(regex, pattern));
+		if (patterns.size() > maximumSize)
+			evict();
+		return pattern;
+	}
+
+	/**
+	 * Equivalent to <code>input.matches(regex)</code>, without recompiling the
+	 * regex each time.
+	 */
+	public static boolean matches(String regex, CharSequence input)
+	{
+		return compile(regex).matcher(input).matches();
+	}
+
+	/**
+	 * Equivalent to <code>input.replaceAll(regex, replacement)</code>, without
+	 * recompiling the regex each time.
+	 */
+	public static String replaceAll(String input, String regex, String replacement)
+	{
+		return compile(regex).matcher(input).replaceAll(replacement);
+	}
+
+	private static void evict()
+	{
+		while (patterns.size() > maximumSize)
+		{
+			Cached oldest = order.poll();
+			if (oldest == null)
+				return;
+			if (patterns.remove(oldest.regex, oldest.pattern))
+				evictions.incrementAndGet();
+		}
+	}
+}
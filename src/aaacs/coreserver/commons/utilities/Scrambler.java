@@ -10,6 +10,8 @@ public class Scrambler
 	private static final String scrambledKeyPrefix = "SKPF";
 	private static final String pScrambledKeyPrefix = "SKPFP";
 	private static final String nScrambledKeyPrefix = "SKPFN";
+	private static final Pattern keyPattern = 
+		Pattern.compile("(" + scrambledKeyPrefix + "[A-Z0-9]+)[^A-Z0-9]");
 
 	/* LEFT HERE FOR HISTORICAL & JUST-IN-CASE REVIEW; THIS CODE IS OBSOLETE.
 	 * The length of scrambled keys
@@ -52,7 +54,6 @@ public class Scrambler
 		
 		if (string != null)
 		{
-			Pattern keyPattern = Pattern.compile("(" + scrambledKeyPrefix + "[A-Z0-9]+)[^A-Z0-9]");
 			Matcher keyPatternMatcher = keyPattern.matcher(string);
 
 			while (keyPatternMatcher.find())
@@ -61,8 +62,12 @@ public class Scrambler
 				try
 				{
 					String unscrambledKey = Long.toString(descramble(possibleKey));
-					if (unscrambledKey != null)
-						copy = copy.replaceFirst(possibleKey, unscrambledKey);
+					// possibleKey is purely alphanumeric, so a literal replacement does
+					// what replaceFirst() did without compiling it as a regex
+					int at = copy.indexOf(possibleKey);
+					if (unscrambledKey != null && at >= 0)
+						copy = copy.substring(0, at) + unscrambledKey + 
+							copy.substring(at + possibleKey.length());
 				}
 				catch (Exception e)
 				{
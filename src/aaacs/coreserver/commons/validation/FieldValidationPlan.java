@@ -0,0 +1,967 @@
+package aaacs.coreserver.commons.validation;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import aaacs.coreserver.commons.utilities.PatternCache;
+
+/**
+ * An immutable, "compiled" form of a FieldValidator. The FieldValidator is a
+ * convenient way to configure checks through chained setters, but every check
+ * it performs has to re-examine each of its nullable rule fields, re-parse its
+ * regular expressions, and rebuild its bit masks. A plan does all of that work
+ * once: regular expressions are precompiled, bit masks are precomputed, choice
+ * arrays are hashed when that pays off, and only the checks that were actually
+ * configured are ever evaluated.
+ *
+ * A plan is a snapshot: changing the FieldValidator afterwards does not affect
+ * plans compiled from it. Plans hold no mutable state and so may be shared
+ * freely between threads.
+ *
+ * The results of every check are identical to those of the corresponding
+ * FieldValidator method (messages, arguments, and their order). The one
+ * difference is that "bitMasks" choices no longer have to be passed in as an
+ * array of the parameter's exact wrapper type; any array of Numbers will do.
+ */
+public class FieldValidationPlan
+{
+	// ----- Static members ---------------------------------------------------
+	private static final int CHOICES_HASHING_THRESHOLD = 4;
+
+	/**
+	 * A set of choices. Small sets, or sets with members whose equals() might
+	 * not be symmetric (e.g. Date vs. Timestamp), are scanned exactly as
+	 * FieldValidator always did; the rest are hashed.
+	 *
+	 * For the primitive checks, the Integer, Long, and Double choices are also
+	 * kept as sorted primitive arrays, so that membership of an int, long, or
+	 * double can be decided without boxing it. Only choices of exactly the
+	 * matching wrapper class count, just as with equals(): an int never matches
+	 * a Long choice. Doubles are compared by their bits, again like equals().
+	 */
+	static final class ChoiceSet
+	{
+		private final Object[] choices;
+		private final Set<Object> hashed;
+		private final int[] ints;
+		private final long[] longs;
+		private final long[] doubleBits;
+		private final boolean hasNull;
+
+		ChoiceSet(Object[] choices)
+		{
+			this.choices = choices;
+			this.hashed = isHashable(choices) ? new HashSet<Object>(Arrays.asList(choices)) : null;
+
+			boolean nullFound = false;
+			int intCount = 0, longCount = 0, doubleCount = 0;
+			for (Object c : choices)
+			{
+				if (c == null) nullFound = true;
+				else if (c instanceof Integer) intCount++;
+				else if (c instanceof Long) longCount++;
+				else if (c instanceof Double) doubleCount++;
+			}
+			hasNull = nullFound;
+			ints = new int[intCount];
+			longs = new long[longCount];
+			doubleBits = new long[doubleCount];
+			intCount = longCount = doubleCount = 0;
+			for (Object c : choices)
+			{
+				if (c instanceof Integer) ints[intCount++] = (Integer) c;
+				else if (c instanceof Long) longs[longCount++] = (Long) c;
+				else if (c instanceof Double) doubleBits[doubleCount++] = Double.doubleToLongBits((Double) c);
+			}
+			Arrays.sort(ints);
+			Arrays.sort(longs);
+			Arrays.sort(doubleBits);
+		}
+
+		private static boolean isHashable(Object[] choices)
+		{
+			if (choices.length <= CHOICES_HASHING_THRESHOLD)
+				return false;
+			for (Object c : choices)
+			{
+				if (c == null) return false;
+				Class<?> k = c.getClass();
+				if (k != String.class && k != Byte.class && k != Short.class &&
+					k != Integer.class && k != Long.class && k != Float.class &&
+					k != Double.class && k != Boolean.class && k != Character.class)
+					return false;
+			}
+			return true;
+		}
+
+		boolean contains(Object element)
+		{
+			if (hashed != null)
+				return hashed.contains(element);
+			for (Object a : choices)
+				if (a.equals(element)) return true;
+			return false;
+		}
+
+		// (a null choice makes the scan fail just as it always did)
+		boolean containsInt(int element)
+		{
+			if (hasNull) return contains(element);
+			return Arrays.binarySearch(ints, element) >= 0;
+		}
+
+		boolean containsLong(long element)
+		{
+			if (hasNull) return contains(element);
+			return Arrays.binarySearch(longs, element) >= 0;
+		}
+
+		boolean containsDouble(double element)
+		{
+			if (hasNull) return contains(element);
+			return Arrays.binarySearch(doubleBits, Double.doubleToLongBits(element)) >= 0;
+		}
+
+		Object[] getChoices()
+		{
+			return choices;
+		}
+	}
+
+	// ----- Instance members -------------------------------------------------
+	protected final String name;
+	protected final boolean allowNullElement;
+
+	protected final Double invalidMinimum;
+	protected final Double invalidMaximum;
+	protected final boolean hasInvalidRange;
+	protected final double invalidMin; // only meaningful if invalidMinimum != null
+	protected final double invalidMax; // only meaningful if invalidMaximum != null
+
+	protected final String invalidRegex;
+	protected final Pattern invalidPattern;
+
+	protected final ChoiceSet invalidChoices;
+	protected final boolean invalidChoicesAsSet;
+	protected final boolean invalidChoicesAsBitMasks;
+	protected final long invalidBitMask;
+	protected final boolean invalidBitMaskUsable;
+
+	protected final Double validMinimum;
+	protected final Double validMaximum;
+	protected final double validMin;
+	protected final double validMax;
+
+	protected final Integer maxFracLength;
+
+	protected final String validRegex;
+	protected final Pattern validPattern;
+
+	protected final ChoiceSet validChoices;
+	protected final boolean validChoicesAsSet;
+	protected final boolean validChoicesAsBitMasks;
+	protected final long validBitMask;
+	protected final boolean validBitMaskUsable;
+
+	protected final Timestamp invalidEarliest;
+	protected final Timestamp invalidLatest;
+	protected final Timestamp validEarliest;
+	protected final Timestamp validLatest;
+
+	// true if nothing but the null check is configured
+	protected final boolean unconstrained;
+
+	FieldValidationPlan(FieldValidator v)
+	{
+		name = v.name;
+		allowNullElement = (v.allowNullElement == null || v.allowNullElement);
+
+		invalidMinimum = v.invalidMinimum;
+		invalidMaximum = v.invalidMaximum;
+		hasInvalidRange = (invalidMinimum != null || invalidMaximum != null);
+		invalidMin = (invalidMinimum != null ? invalidMinimum : 0);
+		invalidMax = (invalidMaximum != null ? invalidMaximum : 0);
+
+		invalidRegex = v.invalidRegex;
+		invalidPattern = (invalidRegex != null ? PatternCache.compile(invalidRegex) : null);
+
+		Object[] ic = (v.invalidChoices != null ? v.invalidChoices.clone() : null);
+		boolean icUsed = (ic != null && v.useInvalidChoicesAs != null);
+		invalidChoices = (ic != null ? new ChoiceSet(ic) : null);
+		invalidChoicesAsSet = icUsed && v.useInvalidChoicesAs.equals("containingSet");
+		invalidChoicesAsBitMasks = icUsed && v.useInvalidChoicesAs.equals("bitMasks");
+		invalidBitMaskUsable = invalidChoicesAsBitMasks && isAllNumbers(ic);
+		invalidBitMask = invalidBitMaskUsable ? makeBitMask(ic) : 0;
+
+		validMinimum = v.validMinimum;
+		validMaximum = v.validMaximum;
+		validMin = (validMinimum != null ? validMinimum : 0);
+		validMax = (validMaximum != null ? validMaximum : 0);
+
+		maxFracLength = v.maxFracLength;
+
+		validRegex = v.validRegex;
+		validPattern = (validRegex != null ? PatternCache.compile(validRegex) : null);
+
+		Object[] vc = (v.validChoices != null ? v.validChoices.clone() : null);
+		boolean vcUsed = (vc != null && v.useValidChoicesAs != null);
+		validChoices = (vc != null ? new ChoiceSet(vc) : null);
+		validChoicesAsSet = vcUsed && v.useValidChoicesAs.equals("containingSet");
+		validChoicesAsBitMasks = vcUsed && v.useValidChoicesAs.equals("bitMasks");
+		validBitMaskUsable = validChoicesAsBitMasks && isAllNumbers(vc);
+		validBitMask = validBitMaskUsable ? makeBitMask(vc) : 0;
+
+		invalidEarliest = copy(v.invalidEarliest);
+		invalidLatest = copy(v.invalidLatest);
+		validEarliest = copy(v.validEarliest);
+		validLatest = copy(v.validLatest);
+
+		unconstrained = !hasInvalidRange && invalidPattern == null && invalidChoices == null &&
+			validMinimum == null && validMaximum == null && maxFracLength == null &&
+			validPattern == null && validChoices == null &&
+			invalidEarliest == null && invalidLatest == null &&
+			validEarliest == null && validLatest == null;
+	}
+
+	// ----- Some minor helper methods ----------------------------------------
+	private static Timestamp copy(Timestamp t)
+	{
+		if (t == null) return null;
+		Timestamp c = new Timestamp(t.getTime());
+		c.setNanos(t.getNanos());
+		return c;
+	}
+
+	private static boolean isAllNumbers(Object[] array)
+	{
+		for (Object o : array)
+			if (!(o instanceof Number)) return false;
+		return true;
+	}
+
+	// The byte/short/int masks are simply the low bits of this one, which is
+	// exactly what OR-ing the narrower values together would have produced.
+	private static long makeBitMask(Object[] array)
+	{
+		long bitMask = 0;
+		for (Object a : array) bitMask = (bitMask | ((Number) a).longValue());
+		return bitMask;
+	}
+
+	// Choices that are not all Numbers cannot be bit masks. FieldValidator used
+	// to fail with a ClassCastException in that case, so keep doing so.
+	private void checkBitMasksUsable(boolean usable)
+	{
+		if (!usable)
+			throw new ClassCastException("Choices cannot be used as bit masks");
+	}
+
+	protected Object[] gatherArgs(Object ... args)
+	{
+		return args;
+	}
+
+	private boolean inInvalidRange(double parameter)
+	{
+		return (invalidMinimum != null && parameter >= invalidMin) ||
+			(invalidMaximum != null && parameter <= invalidMax);
+	}
+
+	// ----- Accessors --------------------------------------------------------
+	public String getName() { return name; }
+	public boolean isAllowNullElement() { return allowNullElement; }
+
+	// ----- The checks -------------------------------------------------------
+	// Every check comes in three forms: one that returns a map of results just
+	// like FieldValidator does, one that reports into a caller-supplied (and
+	// reusable) ValidationResults and allocates nothing when the value is valid,
+	// and one that does the same for an element "name[index]" of a structure.
+	// The latter two return true if the value is valid.
+	public Map<String, List<MsgArgsPair>> checkObject(Object parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkObject(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkObject(Object parameter, ValidationResults sink)
+	{
+		return checkObject(parameter, sink, -1);
+	}
+
+	public boolean checkObject(Object parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("object.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if (invalidPattern != null && invalidPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("object.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("object.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validPattern != null && !validPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("object.InInvalidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("object.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkByte(Byte parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkByte(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkByte(Byte parameter, ValidationResults sink)
+	{
+		return checkByte(parameter, sink, -1);
+	}
+
+	public boolean checkByte(Byte parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+		byte p = parameter;
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Byte.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet)
+		{
+			if (invalidChoices.contains(parameter))
+				sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+		}
+		else if (invalidChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(invalidBitMaskUsable);
+			if ((p & (byte) invalidBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices.getChoices())));
+		}
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (validPattern != null && !validPattern.matcher(Byte.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet)
+		{
+			if (!validChoices.contains(parameter))
+				sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+		}
+		else if (validChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(validBitMaskUsable);
+			if ((p & ~(byte) validBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices.getChoices())));
+		}
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkShort(Short parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkShort(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkShort(Short parameter, ValidationResults sink)
+	{
+		return checkShort(parameter, sink, -1);
+	}
+
+	public boolean checkShort(Short parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+		short p = parameter;
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Short.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet)
+		{
+			if (invalidChoices.contains(parameter))
+				sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+		}
+		else if (invalidChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(invalidBitMaskUsable);
+			if ((p & (short) invalidBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices.getChoices())));
+		}
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (validPattern != null && !validPattern.matcher(Short.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet)
+		{
+			if (!validChoices.contains(parameter))
+				sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+		}
+		else if (validChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(validBitMaskUsable);
+			if ((p & ~(short) validBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices.getChoices())));
+		}
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkInteger(Integer parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkInteger(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkInteger(Integer parameter, ValidationResults sink)
+	{
+		return checkInteger(parameter, sink, -1);
+	}
+
+	public boolean checkInteger(Integer parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		return checkInteger(parameter.intValue(), sink, index);
+	}
+
+	public Map<String, List<MsgArgsPair>> checkInteger(int parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkInteger(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkInteger(int parameter, ValidationResults sink)
+	{
+		return checkInteger(parameter, sink, -1);
+	}
+
+	public boolean checkInteger(int p, ValidationResults sink, int index)
+	{
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Integer.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet)
+		{
+			if (invalidChoices.containsInt(p))
+				sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+		}
+		else if (invalidChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(invalidBitMaskUsable);
+			if ((p & (int) invalidBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices.getChoices())));
+		}
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (validPattern != null && !validPattern.matcher(Integer.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet)
+		{
+			if (!validChoices.containsInt(p))
+				sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+		}
+		else if (validChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(validBitMaskUsable);
+			if ((p & ~(int) validBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices.getChoices())));
+		}
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkLong(Long parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkLong(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkLong(Long parameter, ValidationResults sink)
+	{
+		return checkLong(parameter, sink, -1);
+	}
+
+	public boolean checkLong(Long parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		return checkLong(parameter.longValue(), sink, index);
+	}
+
+	public Map<String, List<MsgArgsPair>> checkLong(long parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkLong(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkLong(long parameter, ValidationResults sink)
+	{
+		return checkLong(parameter, sink, -1);
+	}
+
+	public boolean checkLong(long p, ValidationResults sink, int index)
+	{
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Long.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet)
+		{
+			if (invalidChoices.containsLong(p))
+				sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+		}
+		else if (invalidChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(invalidBitMaskUsable);
+			if ((p & invalidBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices.getChoices())));
+		}
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (validPattern != null && !validPattern.matcher(Long.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet)
+		{
+			if (!validChoices.containsLong(p))
+				sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+		}
+		else if (validChoicesAsBitMasks)
+		{
+			checkBitMasksUsable(validBitMaskUsable);
+			if ((p & ~validBitMask) > 0)
+				sink.add(name, index, new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices.getChoices())));
+		}
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkFloat(Float parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkFloat(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkFloat(Float parameter, ValidationResults sink)
+	{
+		return checkFloat(parameter, sink, -1);
+	}
+
+	public boolean checkFloat(Float parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+		float p = parameter;
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Float.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (maxFracLength != null &&
+			Float.toString(p - (long) p).length() > maxFracLength + 2) // "0.123" (3 + 2)
+			sink.add(name, index, new MsgArgsPair("number.InvalidFracLen", gatherArgs(maxFracLength)));
+
+		if (validPattern != null && !validPattern.matcher(Float.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkDouble(Double parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkDouble(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkDouble(Double parameter, ValidationResults sink)
+	{
+		return checkDouble(parameter, sink, -1);
+	}
+
+	public boolean checkDouble(Double parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("number.Null"));
+			return false;
+		}
+		return checkDouble(parameter.doubleValue(), sink, index);
+	}
+
+	public Map<String, List<MsgArgsPair>> checkDouble(double parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkDouble(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkDouble(double parameter, ValidationResults sink)
+	{
+		return checkDouble(parameter, sink, -1);
+	}
+
+	public boolean checkDouble(double p, ValidationResults sink, int index)
+	{
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if (hasInvalidRange && inInvalidRange(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(Double.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.containsDouble(p))
+			sink.add(name, index, new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validMinimum != null && p < validMin)
+			sink.add(name, index, new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && p > validMax)
+			sink.add(name, index, new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)));
+
+		if (maxFracLength != null &&
+			Double.toString(p - (long) p).length() > maxFracLength + 2) // "0.123" (3 + 2)
+			sink.add(name, index, new MsgArgsPair("number.InvalidFracLen", gatherArgs(maxFracLength)));
+
+		if (validPattern != null && !validPattern.matcher(Double.toString(p)).matches())
+			sink.add(name, index, new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.containsDouble(p))
+			sink.add(name, index, new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkBoolean(Boolean parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkBoolean(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkBoolean(Boolean parameter, ValidationResults sink)
+	{
+		return checkBoolean(parameter, sink, -1);
+	}
+
+	public boolean checkBoolean(Boolean parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("boolean.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if (invalidChoices != null && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("boolean.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validChoices != null && validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("boolean.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkString(String parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkString(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkString(String parameter, ValidationResults sink)
+	{
+		return checkString(parameter, sink, -1);
+	}
+
+	public boolean checkString(String parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("string.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+		int length = parameter.length();
+
+		if (hasInvalidRange && inInvalidRange(length))
+			sink.add(name, index, new MsgArgsPair("string.LengthInInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)));
+
+		if (invalidPattern != null && invalidPattern.matcher(parameter).matches())
+			sink.add(name, index, new MsgArgsPair("string.InvalidExpression", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("string.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validMinimum != null && length < validMin)
+			sink.add(name, index, new MsgArgsPair("string.TooShort", gatherArgs(validMinimum)));
+
+		if (validMaximum != null && length > validMax)
+			sink.add(name, index, new MsgArgsPair("string.TooLong", gatherArgs(validMaximum)));
+
+		if (validPattern != null && !validPattern.matcher(parameter).matches())
+			sink.add(name, index, new MsgArgsPair("string.InvalidExpression", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("string.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkDate(Date parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkDate(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkDate(Date parameter, ValidationResults sink)
+	{
+		return checkDate(parameter, sink, -1);
+	}
+
+	public boolean checkDate(Date parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("date.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+		long p = parameter.getTime();
+
+		if ((invalidEarliest != null && p >= invalidEarliest.getTime()) ||
+			(invalidLatest != null && p <= invalidLatest.getTime()))
+			sink.add(name, index, new MsgArgsPair("date.InInvalidRange", gatherArgs(invalidEarliest, invalidLatest)));
+
+		if (invalidPattern != null && invalidPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("date.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("date.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validEarliest != null && p < validEarliest.getTime())
+			sink.add(name, index, new MsgArgsPair("date.TooEarly", gatherArgs(validEarliest)));
+
+		if (validLatest != null && p > validLatest.getTime())
+			sink.add(name, index, new MsgArgsPair("date.TooLate", gatherArgs(validLatest)));
+
+		if (validPattern != null && !validPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("date.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("date.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkTimestamp(Timestamp parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkTimestamp(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkTimestamp(Timestamp parameter, ValidationResults sink)
+	{
+		return checkTimestamp(parameter, sink, -1);
+	}
+
+	public boolean checkTimestamp(Timestamp parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("timestamp.Null"));
+			return false;
+		}
+		if (unconstrained)
+			return true;
+
+		int mark = sink.getCount();
+
+		if ((invalidEarliest != null && parameter.compareTo(invalidEarliest) >= 0) ||
+			(invalidLatest != null && parameter.compareTo(invalidLatest) <= 0))
+			sink.add(name, index, new MsgArgsPair("timestamp.InInvalidRange", gatherArgs(invalidEarliest, invalidLatest)));
+
+		if (invalidPattern != null && invalidPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("timestamp.InInvalidRange", gatherArgs(invalidRegex)));
+
+		if (invalidChoicesAsSet && invalidChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("timestamp.InInvalidChoices", gatherArgs(invalidChoices.getChoices())));
+
+		if (validEarliest != null && parameter.compareTo(validEarliest) < 0)
+			sink.add(name, index, new MsgArgsPair("timestamp.TooEarly", gatherArgs(validEarliest)));
+
+		if (validLatest != null && parameter.compareTo(validLatest) > 0)
+			sink.add(name, index, new MsgArgsPair("timestamp.TooLate", gatherArgs(validLatest)));
+
+		if (validPattern != null && !validPattern.matcher(parameter.toString()).matches())
+			sink.add(name, index, new MsgArgsPair("timestamp.NotInValidRange", gatherArgs(validRegex)));
+
+		if (validChoicesAsSet && !validChoices.contains(parameter))
+			sink.add(name, index, new MsgArgsPair("timestamp.NotInValidChoices", gatherArgs(validChoices.getChoices())));
+
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkGroups(Groups parameter)
+	{
+		ValidationResults results = new ValidationResults();
+		checkGroups(parameter, results, -1);
+		return results.takeResults();
+	}
+
+	public boolean checkGroups(Groups parameter, ValidationResults sink)
+	{
+		return checkGroups(parameter, sink, -1);
+	}
+
+	public boolean checkGroups(Groups parameter, ValidationResults sink, int index)
+	{
+		if (parameter == null)
+		{
+			if (allowNullElement) return true;
+			sink.add(name, index, new MsgArgsPair("groups.Null"));
+			return false;
+		}
+
+		if (!Groups.isValidGroups(parameter.toString()))
+		{
+			sink.add(name, index, new MsgArgsPair("groups.Invalid"));
+			return false;
+		}
+		return true;
+	}
+}
@@ -2,10 +2,8 @@ package aaacs.coreserver.commons.validation;
 
 import java.sql.Date;
 import java.sql.Timestamp;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
 /**
  * @author Ahmed A. Abd-Allah
@@ -33,6 +31,7 @@ public class FieldValidator
 	protected Timestamp invalidLatest = null;
 	protected Timestamp validEarliest = null;
 	protected Timestamp validLatest = null;
+	private FieldValidationPlan plan = null;
 
 	public FieldValidator(String name)
 	{
@@ -43,55 +42,70 @@ public class FieldValidator
 	{
 		this(null);
 	}
-	
-	// ----- Some minor helper methods ----------------------------------------
-	private <T> boolean contains(T[] array, T element)
-	{
-		for (T a : array)
-			if (a.equals(element)) return true;
-		return false;
-	}
 
-	/* This is the closest I got to converting the makeBitMask methods to use
-	 * generics. But it doesn't work since Java does not support casting from
-	 * a Byte to a Long automatically. Plus it looks terrible, and is slow due
-	 * to all the casting going on. Sour grapes you say.
-	private <T> T makeBitMask(T[] array)
-	{
-		T bitMask = (T) new Long(0);
-		for (T a : array) bitMask = (T) new Long(((Long) bitMask | (Long) a));
-		return bitMask;
+	/**
+	 * @return a validator with the same checks, which can then be changed
+	 * without changing this one
+	 */
+	public FieldValidator copy()
+	{
+		FieldValidator copy = new FieldValidator();
+		copy.copyChecks(this);
+		return copy;
+	}
+
+	protected void copyChecks(FieldValidator other)
+	{
+		name = other.name;
+		allowNullElement = other.allowNullElement;
+		invalidMinimum = other.invalidMinimum;
+		invalidMaximum = other.invalidMaximum;
+		invalidRegex = other.invalidRegex;
+		invalidChoices = (other.invalidChoices != null ? other.invalidChoices.clone() : null);
+		useInvalidChoicesAs = other.useInvalidChoicesAs;
+		validMinimum = other.validMinimum;
+		validMaximum = other.validMaximum;
+		maxFracLength = other.maxFracLength;
+		validRegex = other.validRegex;
+		validChoices = (other.validChoices != null ? other.validChoices.clone() : null);
+		useValidChoicesAs = other.useValidChoicesAs;
+		invalidEarliest = other.invalidEarliest;
+		invalidLatest = other.invalidLatest;
+		validEarliest = other.validEarliest;
+		validLatest = other.validLatest;
+		invalidatePlan();
 	}
-	*/
-
-	private Byte makeBitMask(Byte[] array)
+	
+	// ----- Compiled plans ---------------------------------------------------
+	/**
+	 * Freezes the current configuration into an immutable, thread-safe plan.
+	 * Compile once and keep the plan around when the same checks are applied
+	 * over and over (e.g. in an action handler).
+	 */
+	public FieldValidationPlan compile()
 	{
-		byte bitMask = 0;
-		for (Byte a : array) bitMask = (byte) (bitMask | a);
-		return bitMask;
+		return new FieldValidationPlan(this);
 	}
 
-	private Short makeBitMask(Short[] array)
+	/**
+	 * The plan for the current configuration, compiled on first use and kept
+	 * until the configuration changes again through one of the setters. It is
+	 * a snapshot: the choice arrays are copied when set, so changing an array
+	 * after passing it in changes nothing, and subclasses that assign the
+	 * fields directly must call invalidatePlan() afterwards.
+	 */
+	public FieldValidationPlan getPlan()
 	{
-		short bitMask = 0;
-		for (Short a : array) bitMask = (short) (bitMask | a);
-		return bitMask;
+		if (plan == null)
+			plan = compile();
+		return plan;
 	}
 
-	private Integer makeBitMask(Integer[] array)
+	protected void invalidatePlan()
 	{
-		int bitMask = 0;
-		for (Integer a : array) bitMask = (int) (bitMask | a);
-		return bitMask;
+		plan = null;
 	}
 
-	private Long makeBitMask(Long[] array)
-	{
-		long bitMask = 0;
-		for (Long a : array) bitMask = (bitMask | a);
-		return bitMask;
-	}
-	
 	protected Object[] gatherArgs(Object ... args)
 	{
 		return args;
@@ -117,865 +131,205 @@ public class FieldValidator
 		invalidLatest = null;
 		validEarliest = null;
 		validLatest = null;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setName(String name)
 	{
 		this.name = name;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setAllowNullElement(Boolean allowNull)
 	{
 		this.allowNullElement = allowNull;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidChoices(Object[] invalidChoices)
 	{
-		this.invalidChoices = invalidChoices;
+		this.invalidChoices = (invalidChoices != null ? invalidChoices.clone() : null);
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidMaximum(Double invalidMaximum)
 	{
 		this.invalidMaximum = invalidMaximum;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidMinimum(Double invalidMinimum)
 	{
 		this.invalidMinimum = invalidMinimum;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidRegex(String invalidRegex)
 	{
 		this.invalidRegex = invalidRegex;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setUseInvalidChoicesAs(String useInvalidChoicesAs)
 	{
 		this.useInvalidChoicesAs = useInvalidChoicesAs;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setUseValidChoicesAs(String useValidChoicesAs)
 	{
 		this.useValidChoicesAs = useValidChoicesAs;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidChoices(Object ... validChoices)
 	{
-		this.validChoices = validChoices;
+		this.validChoices = (validChoices != null ? validChoices.clone() : null);
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setMaxFracLength(Integer validMaxFracLength)
 	{
 		this.maxFracLength = validMaxFracLength;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidMaximum(Double validMaximum)
 	{
 		this.validMaximum = validMaximum;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidMinimum(Double validMinimum)
 	{
 		this.validMinimum = validMinimum;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidRegex(String validRegex)
 	{
 		this.validRegex = validRegex;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidEarliest(Timestamp invalidEarliest)
 	{
 		this.invalidEarliest = invalidEarliest;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setInvalidLatest(Timestamp invalidLatest)
 	{
 		this.invalidLatest = invalidLatest;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidEarliest(Timestamp validEarliest)
 	{
 		this.validEarliest = validEarliest;
+		invalidatePlan();
 		return this;
 	}
 
 	public FieldValidator setValidLatest(Timestamp validLatest)
 	{
 		this.validLatest = validLatest;
+		invalidatePlan();
 		return this;
 	}
 
 	public Map<String, List<MsgArgsPair>> checkObject(Object parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("object.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if (invalidRegex != null)
-		{
-			String parameterAsString = parameter.toString();
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("object.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("object.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validRegex != null)
-		{
-			String parameterAsString = parameter.toString();
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("object.InInvalidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("object.NotInValidChoices", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkObject(parameter);
 	}
 
-	// Java needs operator overloading to make generics useful here...
-	// It is possible to write the following repetitive methods in a way to
-	// compress the code. But I left it this way intentionally because I
-	// believe that making them faster is better than saving code space since
-	// this code is very stable and will not change most likely. And Allaah
-	// knows best.
+	// The type-specific checks themselves live in FieldValidationPlan, where
+	// they run against precompiled regexes and precomputed bit masks. The int,
+	// long, and double overloads check the value without ever boxing it.
 	public Map<String, List<MsgArgsPair>> checkByte(Byte parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-		
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Byte.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-			else if (useInvalidChoicesAs.equals("bitMasks") &&
-				(parameter & makeBitMask((Byte[]) invalidChoices)) > 0)
-				results.add( new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Byte.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-			else if (useValidChoicesAs.equals("bitMasks") &&
-				(parameter & ~makeBitMask((Byte[]) validChoices)) > 0)
-				results.add( new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkByte(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkShort(Short parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-		
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Short.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-			else if (useInvalidChoicesAs.equals("bitMasks") &&
-				(parameter & makeBitMask((Short[]) invalidChoices)) > 0)
-				results.add( new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Short.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-			else if (useValidChoicesAs.equals("bitMasks") &&
-				(parameter & ~makeBitMask((Short[]) validChoices)) > 0)
-				results.add( new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkShort(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkInteger(Integer parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-		
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Integer.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-			else if (useInvalidChoicesAs.equals("bitMasks") &&
-				(parameter & makeBitMask((Integer[]) invalidChoices)) > 0)
-				results.add( new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Integer.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-			else if (useValidChoicesAs.equals("bitMasks") &&
-				(parameter & ~makeBitMask((Integer[]) validChoices)) > 0)
-				results.add( new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices)) );
-		}
+		return getPlan().checkInteger(parameter);
+	}
 
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+	public Map<String, List<MsgArgsPair>> checkInteger(int parameter)
+	{
+		return getPlan().checkInteger(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkLong(Long parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-		
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Long.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-			else if (useInvalidChoicesAs.equals("bitMasks") &&
-				(parameter & makeBitMask((Long[]) invalidChoices)) > 0)
-				results.add( new MsgArgsPair("number.InvalidBitsSet", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Long.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-			else if (useValidChoicesAs.equals("bitMasks") &&
-				(parameter & ~makeBitMask((Long[]) validChoices)) > 0)
-				results.add( new MsgArgsPair("number.OtherThanValidBitsSet", gatherArgs(validChoices)) );
-		}
+		return getPlan().checkLong(parameter);
+	}
 
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+	public Map<String, List<MsgArgsPair>> checkLong(long parameter)
+	{
+		return getPlan().checkLong(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkFloat(Float parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Float.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (maxFracLength != null &&
-			Float.toString(parameter - parameter.longValue()).length() >
-				maxFracLength + 2) // "0.123" (3 + 2)
-			results.add( new MsgArgsPair("number.InvalidFracLen", gatherArgs(maxFracLength)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Float.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkFloat(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkDouble(Double parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("number.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null && 
-				parameter >= invalidMinimum &&
-				parameter <= invalidMaximum) ||
-			(invalidMinimum != null && 
-				parameter >= invalidMinimum) ||
-			(invalidMaximum != null && 
-				parameter <= invalidMaximum)
-			)
-			results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-
-		if (invalidRegex != null)
-		{
-			String parameterAsString = Double.toString(parameter);
-			if (parameterAsString.matches(invalidRegex))
-				results.add( new MsgArgsPair("number.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("number.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter < validMinimum)
-			results.add( new MsgArgsPair("number.TooSmall", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter > validMaximum)
-			results.add( new MsgArgsPair("number.TooLarge", gatherArgs(validMaximum)) );
-
-		if (maxFracLength != null &&
-			Double.toString(parameter - parameter.longValue()).length() >
-				maxFracLength + 2) // "0.123" (3 + 2)
-			results.add( new MsgArgsPair("number.InvalidFracLen", gatherArgs(maxFracLength)) );
-
-		if (validRegex != null)
-		{
-			String parameterAsString = Double.toString(parameter);
-			if (!parameterAsString.matches(validRegex))
-				results.add( new MsgArgsPair("number.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("number.NotInValidChoices", gatherArgs(validChoices)) );
-		}
+		return getPlan().checkDouble(parameter);
+	}
 
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+	public Map<String, List<MsgArgsPair>> checkDouble(double parameter)
+	{
+		return getPlan().checkDouble(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkBoolean(Boolean parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("boolean.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if (invalidChoices != null && contains(invalidChoices, parameter))
-			results.add( new MsgArgsPair("boolean.InInvalidChoices", gatherArgs(invalidChoices)) );
-
-		if (validChoices != null && contains(validChoices, parameter))
-			results.add( new MsgArgsPair("boolean.NotInValidChoices", gatherArgs(validChoices)) );
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkBoolean(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkString(String parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("string.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidMinimum != null && invalidMaximum != null &&
-				parameter.length() >= invalidMinimum &&
-				parameter.length() <= invalidMaximum) ||
-			(invalidMinimum != null &&
-				parameter.length() >= invalidMinimum) ||
-			(invalidMaximum != null &&
-					parameter.length() <= invalidMaximum))
-			results.add( new MsgArgsPair("string.LengthInInvalidRange", gatherArgs(invalidMinimum, invalidMaximum)) );
-
-		if (invalidRegex != null)
-		{
-			if (parameter.matches(invalidRegex))
-				results.add( new MsgArgsPair("string.InvalidExpression", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("string.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validMinimum != null && parameter.length() < validMinimum)
-			results.add( new MsgArgsPair("string.TooShort", gatherArgs(validMinimum)) );
-
-		if (validMaximum != null && parameter.length() > validMaximum)
-			results.add( new MsgArgsPair("string.TooLong", gatherArgs(validMaximum)) );
-
-		if (validRegex != null)
-		{
-			if (!parameter.matches(validRegex))
-				results.add( new MsgArgsPair("string.InvalidExpression", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("string.NotInValidChoices", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkString(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkDate(Date parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("date.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidEarliest != null && invalidLatest != null && 
-				parameter.compareTo(new Date(invalidEarliest.getTime())) >= 0 &&
-				parameter.compareTo(new Date(invalidLatest.getTime())) <= 0) ||
-			(invalidEarliest != null && 
-				parameter.compareTo(new Date(invalidEarliest.getTime())) >= 0) ||
-			(invalidLatest != null && 
-				parameter.compareTo(new Date(invalidLatest.getTime())) <= 0)
-			)
-			results.add( new MsgArgsPair("date.InInvalidRange", gatherArgs(invalidEarliest, invalidLatest)) );
-		
-		if (invalidRegex != null)
-		{
-			if (parameter.toString().matches(invalidRegex))
-				results.add( new MsgArgsPair("date.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("date.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validEarliest != null && 
-			parameter.compareTo(new Date(validEarliest.getTime())) < 0)
-			results.add( new MsgArgsPair("date.TooEarly", gatherArgs(validEarliest)) );
-
-		if (validLatest != null && 
-			parameter.compareTo(new Date(validLatest.getTime())) > 0)
-			results.add( new MsgArgsPair("date.TooLate", gatherArgs(validLatest)) );
-
-		if (validRegex != null)
-		{
-			if (!parameter.toString().matches(validRegex))
-				results.add( new MsgArgsPair("date.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("date.NotInValidChoices", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkDate(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkTimestamp(Timestamp parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("timestamp.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if ((invalidEarliest != null && invalidLatest != null && 
-				parameter.compareTo(invalidEarliest) >= 0 &&
-				parameter.compareTo(invalidLatest) <= 0) ||
-			(invalidEarliest != null && 
-				parameter.compareTo(invalidEarliest) >= 0) ||
-			(invalidLatest != null && 
-				parameter.compareTo(invalidLatest) <= 0)
-			)
-			results.add( new MsgArgsPair("timestamp.InInvalidRange", gatherArgs(invalidEarliest, invalidLatest)) );
-		
-		if (invalidRegex != null)
-		{
-			if (parameter.toString().matches(invalidRegex))
-				results.add( new MsgArgsPair("timestamp.InInvalidRange", gatherArgs(invalidRegex)) );
-		}
-
-		if (invalidChoices != null && useInvalidChoicesAs != null)
-		{
-			if (useInvalidChoicesAs.equals("containingSet") && 
-				contains(invalidChoices, parameter))
-				results.add( new MsgArgsPair("timestamp.InInvalidChoices", gatherArgs(invalidChoices)) );
-		}
-
-		if (validEarliest != null && parameter.compareTo(validEarliest) < 0)
-			results.add( new MsgArgsPair("timestamp.TooEarly", gatherArgs(validEarliest)) );
-
-		if (validLatest != null && parameter.compareTo(validLatest) > 0)
-			results.add( new MsgArgsPair("timestamp.TooLate", gatherArgs(validLatest)) );
-
-		if (validRegex != null)
-		{
-			if (!parameter.toString().matches(validRegex))
-				results.add( new MsgArgsPair("timestamp.NotInValidRange", gatherArgs(validRegex)) );
-		}
-
-		if (validChoices != null && useValidChoicesAs != null)
-		{
-			if (useValidChoicesAs.equals("containingSet") &&
-				!contains(validChoices, parameter))
-				results.add( new MsgArgsPair("timestamp.NotInValidChoices", gatherArgs(validChoices)) );
-		}
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkTimestamp(parameter);
 	}
 
 	public Map<String, List<MsgArgsPair>> checkGroups(Groups parameter)
 	{
-		List<MsgArgsPair> results = new Vector<MsgArgsPair>();
-		Map<String, List<MsgArgsPair>> mapResults = null;
-		
-		if (allowNullElement == false && parameter == null)
-		{
-			results.add( new MsgArgsPair("groups.Null") );
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		else if (parameter == null)
-			return null;
-
-		if (!Groups.isValidGroups(parameter.toString()))
-			results.add( new MsgArgsPair("groups.Invalid") );
-
-		if (results.size() > 0)
-		{
-			mapResults = new HashMap<String, List<MsgArgsPair>>();
-			mapResults.put(name, results);
-			return mapResults;
-		}
-		return null;
+		return getPlan().checkGroups(parameter);
 	}
 }
 
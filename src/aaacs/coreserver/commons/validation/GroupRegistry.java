@@ -0,0 +1,71 @@
+package aaacs.coreserver.commons.validation;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns group names to small integer ids, 0 upwards, in the order they are
+ * first seen, so that a set of groups can be held as a set of bits (see
+ * Groups). Ids are never reused nor forgotten, so only trusted code is to
+ * intern names, e.g. those of the groups defined in the database at startup
+ * or when a group is created: there are then only ever as many as there are
+ * distinct groups, i.e. a few hundred at most. Groups itself only looks names
+ * up, as its strings may come from clients.
+ *
+ * The registry is safe for concurrent use; looking up a name is a single
+ * ConcurrentHashMap lookup.
+ */
+public class GroupRegistry
+{
+	// ----- Static members ---------------------------------------------------
+	private static final ConcurrentHashMap<String, Integer> ids =
+		new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] names = new String[64];
+	private static int count = 0; // guarded by the class
+
+	/**
+	 * @return the id of the group, or -1 if it was never interned
+	 */
+	public static int lookup(String group)
+	{
+		Integer id = (group == null ? null : ids.get(group));
+		return (id == null ? -1 : id.intValue());
+	}
+
+	/**
+	 * @return the id of the group, giving it the next one if it has none yet;
+	 * only for groups that really exist (see the class comment)
+	 */
+	public static int intern(String group)
+	{
+		Integer id = (group == null ? null : ids.get(group));
+		if (id != null)
+			return id.intValue();
+		if (!Groups.isValidGroup(group))
+			throw new IllegalArgumentException("group.Invalid");
+		return add(group);
+	}
+
+	/**
+	 * @return the name of the group with that id, or null if there is none
+	 */
+	public static String nameOf(int id)
+	{
+		String[] current = names;
+		return (id >= 0 && id < current.length ? current[id] : null);
+	}
+
+	public static int size() { return ids.size(); }
+
+	private static synchronized int add(String group)
+	{
+		Integer id = ids.get(group);
+		if (id != null)
+			return id.intValue();
+		if (count == names.length)
+			names = Arrays.copyOf(names, count * 2);
+		names[count] = group;
+		ids.put(group, count);
+		return count++;
+	}
+}
@@ -1,6 +1,9 @@
 package aaacs.coreserver.commons.validation;
 
 import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.persistence.Basic;
 import javax.persistence.Column;
@@ -12,6 +15,12 @@ import javax.persistence.Embeddable;
  *
  * A convenience class to hide the implementation details of groups. Currently the implementation
  * uses a simple string of all the groups concatenated with each other. Not pretty but it works.
+ * 
+ * The string is what is persisted, and what changes when groups are added or deleted. Membership
+ * checks instead use the set of the groups' ids (see GroupRegistry) as bits, which is only worked
+ * out from the string when first needed, and again whenever the string changed since. Groups
+ * never registers names itself, as its strings may come from anywhere: those of groups that
+ * trusted code did not register are kept by name instead, and checked more slowly.
  */
 @Embeddable
 public class Groups implements Serializable
@@ -33,22 +42,61 @@ public class Groups implements Serializable
 	// the maximum space available is 220 characters or up to 10 groups (plus brackets around each)
 	public static final int maxGroupsLength = 220;
 
+	// A string consisting of one or more tokens. Each token can be one of three patterns
+	// 1. A string that is a single character enveloped by '[' and ']'. That character CANNOT be
+	//    either '[' or ']' naturally.
+	// 2. A string that starts with '[', followed up by any character BUT '_', '[', or ']', 
+	//    followed by 1 to 19 characters that are NOT '[' or ']', followed by ']'.
+	// 3. A string that starts with '[', followed by a '_', followed by any character BUT
+	//    '_', '[', or ']', followed by 1 to 18 characters that are NOT '[' or ']', followed by ']'.
 	public static boolean isValidGroups(String inGroups)
 	{
-		if (inGroups == null || inGroups.equals(Groups.INVALID))
-			return false;
+		return parseGroups(inGroups, null) >= 0;
+	}
 
-		if (inGroups.equals(Groups.UNINITIALIZED) || inGroups.equals("") || inGroups.equals(Groups.MATCH_ALL_GROUPS) ||
-			// A string consisting of one or more tokens. Each token can be one of three patterns
-			// 1. A string that is a single character enveloped by '[' and ']'. That character CANNOT be
-			//    either '[' or ']' naturally.
-			// 2. A string that starts with '[', followed up by any character BUT '_', '[', or ']', 
-			//    followed by 1 to 19 characters that are NOT '[' or ']', followed by ']'.
-			// 3. A string that starts with '[', followed by a '_', followed by any character BUT
-			//    '_', '[', or ']', followed by 1 to 18 characters that are NOT '[' or ']', followed by ']'.
-			inGroups.matches("(\\[[^\\[\\]]\\]|\\[[^_\\[\\]][^\\[\\]]{1,19}\\]|\\[_[^_\\[\\]][^\\[\\]]{1,18}\\])+"))
-			return true;
-		return false;
+	/**
+	 * Validates a string of groups (see isValidGroups()) and finds its groups, in
+	 * a single pass over it and without allocating anything.
+	 *
+	 * @param bounds if not null, receives for each group (as long as there is
+	 * room) the index of the first character of its name, then that of the ']'
+	 * ending it; a string of groups has at most length / 3 groups
+	 * @return how many groups there are (0 for the special values), or -1 if the
+	 * string is not valid
+	 */
+	public static int parseGroups(String inGroups, int[] bounds)
+	{
+		if (inGroups == null)
+			return -1;
+		int length = inGroups.length();
+		if (length == 0 || inGroups.charAt(0) != '[')
+			return (length == 0 || inGroups.equals(Groups.UNINITIALIZED) ||
+				inGroups.equals(Groups.MATCH_ALL_GROUPS) ? 0 : -1);
+
+		int count = 0;
+		for (int i = 0; i < length; i++) // i is at the '[' opening a group
+		{
+			if (inGroups.charAt(i) != '[')
+				return -1;
+			int start = ++i;
+			for (char c; i < length && (c = inGroups.charAt(i)) != ']'; i++)
+				if (c == '[')
+					return -1;
+			int nameLength = i - start;
+			if (i == length || nameLength == 0 || nameLength > maxGroupLength)
+				return -1;
+			// a name of more than one character may start with one '_' only, then two others
+			if (nameLength > 1 && inGroups.charAt(start) == '_' &&
+				(nameLength == 2 || inGroups.charAt(start + 1) == '_'))
+				return -1;
+			if (bounds != null && 2 * count + 1 < bounds.length)
+			{
+				bounds[2 * count] = start;
+				bounds[2 * count + 1] = i;
+			}
+			count++;
+		}
+		return count;
 	}
 
 	// We could put this method inside "GroupBean" but it's here to centralize all the validation
@@ -65,12 +113,78 @@ public class Groups implements Serializable
 		return true;		
 	}
 
+	/**
+	 * The ids of the registered groups in a string of groups, and the names of
+	 * the others; immutable, so that it can be shared by the threads checking
+	 * the same Groups.
+	 */
+	private static final class Members
+	{
+		final String source;
+		final BitSet ids = new BitSet();
+		final Set<String> unregistered; // null if there are none
+
+		Members(String inSource)
+		{
+			source = inSource;
+			// the special values, and invalid strings, have no groups
+			int[] bounds = new int[2 * (inSource.length() / 3)];
+			int count = parseGroups(inSource, bounds);
+			Set<String> names = null;
+			for (int i = 0; i < count; i++)
+			{
+				String name = inSource.substring(bounds[2 * i], bounds[2 * i + 1]);
+				int id = GroupRegistry.lookup(name);
+				if (id >= 0)
+					ids.set(id);
+				else
+				{
+					if (names == null)
+						names = new HashSet<String>();
+					names.add(name);
+				}
+			}
+			unregistered = names;
+		}
+
+		// a name may have been registered since, and then be among either
+		boolean contains(String group)
+		{
+			int id = GroupRegistry.lookup(group);
+			return (id >= 0 && ids.get(id)) || (unregistered != null && unregistered.contains(group));
+		}
+
+		boolean intersects(Members other)
+		{
+			if (ids.intersects(other.ids))
+				return true;
+			if (unregistered != null)
+				for (String name : unregistered)
+					if (other.contains(name))
+						return true;
+			if (other.unregistered != null)
+				for (String name : other.unregistered)
+					if (contains(name))
+						return true;
+			return false;
+		}
+	}
+
 	// ----- Instance members -------------------------------------------------
 	@Basic @Column(name="\"groups\"") private String groups = null;
+	private transient Members members = null; // not persisted; see members()
+	private transient String checked = null; // the value of groups last known to be valid
 
 	public Groups(Groups inGroups)
 	{
-		setGroups(inGroups.groups);
+		// a copy of a valid instance is valid: no need to check it again
+		if (inGroups.isKnownValid())
+		{
+			groups = checked = inGroups.groups;
+			members = inGroups.members;
+		}
+		else
+			setGroups(inGroups.groups);
 	}
 
 	public Groups(String inGroups)
@@ -104,10 +218,18 @@ public class Groups implements Serializable
 			((groups.length() + group.length()) > maxGroupsLength))
 			return false;
 
+		if (inGroups(group))
+			return true;
+		boolean wasValid = isKnownValid();
 		if (isUninitialized() || isEmpty() || isMatchingAll())
+		{
 			groups = "[" + group + "]";
+			wasValid = true;
+		}
 		else
 			groups = groups + "[" + group + "]";
+		if (wasValid)
+			checked = groups;
 
 		return true;
 	}
@@ -118,7 +240,20 @@ public class Groups implements Serializable
 			((groups.length() + group.length()) > maxGroupsLength))
 			return false;
 
-		groups = groups.replaceAll("\\[" + group + "\\]", "");
+		if (!inGroups(group))
+			return true;
+		boolean wasValid = isKnownValid();
+		String token = "[" + group + "]";
+		StringBuilder remaining = new StringBuilder(groups.length());
+		int from = 0;
+		for (int at = groups.indexOf(token); at >= 0; at = groups.indexOf(token, from))
+		{
+			remaining.append(groups, from, at);
+			from = at + token.length();
+		}
+		groups = remaining.append(groups, from, groups.length()).toString();
+		if (wasValid)
+			checked = groups;
 		return true;
 	}
 
@@ -127,22 +262,48 @@ public class Groups implements Serializable
 		if (!Groups.isValidGroup(group))
 			return false;
 
-		if (groups.indexOf("[" + group + "]") >= 0)
-			return true;
+		return members().contains(group);
+	}
 
-		return false;
+	/**
+	 * @return true if any of the groups of <code>other</code> is among these
+	 */
+	public boolean inAnyGroup(Groups other)
+	{
+		return members().intersects(other.members());
+	}
+
+	/**
+	 * @return the groups, worked out again if the string changed
+	 * (including when it was set by the persistence layer)
+	 */
+	private Members members()
+	{
+		Members current = members;
+		if (current == null || current.source != groups)
+			members = current = new Members(groups);
+		return current;
 	}
 	
 	public boolean isValid()
 	{
-		return Groups.isValidGroups(groups);
+		return isKnownValid() || Groups.isValidGroups(groups);
+	}
+
+	/**
+	 * @return true if the string was validated, or built from a valid one, since
+	 * it was last set (the persistence layer sets it without validating it)
+	 */
+	private boolean isKnownValid()
+	{
+		return groups != null && groups == checked;
 	}
 
 	public void setGroups(String inGroups)
 	{
 		// check that composed of [whatever]* where whatever doesn't start with __ or contain [,]
 		if (Groups.isValidGroups(inGroups))
-			groups = inGroups;
+			groups = checked = inGroups;
 		else
 			groups = Groups.INVALID;
 	}
@@ -0,0 +1,398 @@
+package aaacs.coreserver.commons.validation;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Confirms that the elements/keys/values at each level of a nested array, List,
+ * or Map have the expected types. The expected types are inside the two arrays
+ * keyClasses and valueClasses. keyClasses is only used when that level
+ * represents a Map. If the level is an array or List or simply a basic type,
+ * only the valueClasses element for that level is relevant (the keyClasses
+ * element is unused and may be set to null). So if you wanted to check a
+ * Map<String, Map<String, Long>>, then keyClasses = {String, String},
+ * valueClasses = {Map, Long}.
+ *
+ * The structure is walked iteratively with an explicit stack, in the same
+ * depth-first order the old recursive checks of ParameterValidator used, so
+ * the first problem found is the same one. What each level holds is decided
+ * once per check rather than once per container, whether a class is supported
+ * at all is decided once per class and then remembered, and the element
+ * classes last accepted at each level skip the isAssignableFrom() test.
+ *
+ * Every problem is reported with a ParameterTypeException whose message is the
+ * usual message key and whose path tells where the offending element was
+ * found. Two budgets, the maximum depth and the maximum number of elements
+ * examined, make the check give up early on absurdly large parameters.
+ */
+public class ParameterTypeChecker
+{
+	// ----- Static members ---------------------------------------------------
+	// What a class is, as far as the checks are concerned
+	private static final int UNSUPPORTED = -1;
+	private static final int BASIC = 0;
+	private static final int ARRAY = 1;
+	private static final int LIST = 2;
+	private static final int MAP = 3;
+
+	private static final ConcurrentHashMap<Class<?>, Integer> decisions =
+		new ConcurrentHashMap<Class<?>, Integer>();
+
+	private static volatile int maximumDepth = 32;
+	public static int getMaximumDepth() { return maximumDepth; }
+	public static void setMaximumDepth(int depth)
+	{
+		maximumDepth = (depth < 1 ? 1 : depth);
+	}
+
+	private static volatile int maximumElements = 1000000;
+	public static int getMaximumElements() { return maximumElements; }
+	public static void setMaximumElements(int elements)
+	{
+		maximumElements = (elements < 1 ? 1 : elements);
+	}
+
+	// ----- The checks -------------------------------------------------------
+	public static void checkArray(Object[] array, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		new Walk(keyClasses, valueClasses).check(array, ARRAY, 0);
+	}
+
+	public static void checkList(List<?> list, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		new Walk(keyClasses, valueClasses).check(list, LIST, 0);
+	}
+
+	public static void checkMap(Map<?, ?> map, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		new Walk(keyClasses, valueClasses).check(map, MAP, 0);
+	}
+
+	/**
+	 * As above, but the structure sits at <code>level</code> of the class arrays
+	 * rather than at the top.
+	 */
+	public static void checkArray(Object[] array,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, int level)
+	{
+		new Walk(keyClasses, valueClasses).check(array, ARRAY, level);
+	}
+
+	public static void checkList(List<?> list,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, int level)
+	{
+		new Walk(keyClasses, valueClasses).check(list, LIST, level);
+	}
+
+	public static void checkMap(Map<?, ?> map,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, int level)
+	{
+		new Walk(keyClasses, valueClasses).check(map, MAP, level);
+	}
+
+	// ----- Supported classes ------------------------------------------------
+	/**
+	 * Only certain classes are supported: Object (try to avoid this when
+	 * possible - it can be used to defeat this whole class), the wrappers of
+	 * the numbers, Boolean, String, Date, Timestamp, Maps, Lists, and arrays of
+	 * any of these.
+	 */
+	public static boolean isSupportedClass(Class<?> c)
+	{
+		return c != null && decide(c) != UNSUPPORTED;
+	}
+
+	public static void checkSupportedClass(Class<?> c)
+	{
+		if (!isSupportedClass(c))
+			throw new ParameterTypeException("parameterType.Unsupported");
+	}
+
+	private static int decide(Class<?> c)
+	{
+		Integer decision = decisions.get(c);
+		if (decision == null)
+		{
+			decision = decideOnce(c);
+			decisions.put(c, decision);
+		}
+		return decision;
+	}
+
+	// The order matters for classes that are more than one of these: the old
+	// recursive checks looked for arrays first, then Lists, then Maps.
+	private static int decideOnce(Class<?> c)
+	{
+		if (c.equals(Object.class) ||
+			c.equals(Byte.class) || c.equals(Short.class) ||
+			c.equals(Integer.class) || c.equals(Long.class) ||
+			c.equals(Float.class) || c.equals(Double.class) ||
+			c.equals(Boolean.class) || c.equals(String.class) ||
+			c.equals(Date.class) || c.equals(Timestamp.class))
+			return BASIC;
+		if (c.isArray())
+		{
+			Class<?> component = c.getComponentType();
+			if (!component.isPrimitive() && decide(component) != UNSUPPORTED)
+				return ARRAY;
+			return UNSUPPORTED;
+		}
+		if (List.class.isAssignableFrom(c))
+			return LIST;
+		if (Map.class.isAssignableFrom(c))
+			return MAP;
+		return UNSUPPORTED;
+	}
+
+	// ----- The walk ---------------------------------------------------------
+	/**
+	 * One check of one structure: the class arrays, what each level holds, and
+	 * the stack of containers whose children are still to be visited.
+	 */
+	private static final class Walk
+	{
+		private final Class<?>[] keyClasses;
+		private final Class<?>[] valueClasses;
+		private final int last; // the last level with type information
+		private int[] kinds; // what the containers at each level are
+		private boolean[] prepared; // whether kinds[level+1] is known yet
+		// the last classes accepted at each level, to skip most isAssignableFrom()
+		private Class<?>[] acceptedKeys;
+		private Class<?>[] acceptedValues;
+		private final List<Frame> stack = new ArrayList<Frame>();
+		private int elements = 0;
+		private final int maximum = maximumElements;
+
+		Walk(Class<?>[] keyClasses, Class<?>[] valueClasses)
+		{
+			this.keyClasses = keyClasses;
+			this.valueClasses = valueClasses;
+			last = keyClasses.length - 1;
+		}
+
+		void check(Object root, int rootKind, int level)
+		{
+			if (last - level + 1 > maximumDepth)
+				throw new ParameterTypeException("parameterType.TooDeep");
+
+			kinds = new int[last + 2];
+			kinds[level] = rootKind;
+			prepared = new boolean[last + 1];
+			acceptedKeys = new Class<?>[last + 1];
+			acceptedValues = new Class<?>[last + 1];
+
+			scan(root, level);
+			if (level < last)
+				stack.add(new Frame(root, rootKind, level));
+
+			while (!stack.isEmpty())
+			{
+				Frame frame = stack.get(stack.size() - 1);
+				if (!frame.next())
+				{
+					stack.remove(stack.size() - 1);
+					continue;
+				}
+				int childLevel = frame.level + 1;
+				Object child = frame.current;
+				if (child == null)
+					throw new ParameterTypeException(nullMessage(kinds[childLevel]), path(null));
+				scan(child, childLevel);
+				if (childLevel < last)
+					stack.add(new Frame(child, kinds[childLevel], childLevel));
+			}
+		}
+
+		/**
+		 * Checks the types of the elements (or keys and values) of one container.
+		 * The class information of a level is only looked at when the first
+		 * container at that level is, and in the same order as the old recursive
+		 * checks did; so a misconfigured level that is never reached, say below
+		 * an empty map, goes unnoticed just as it always did.
+		 */
+		private void scan(Object container, int level)
+		{
+			int kind = kinds[level];
+			Class<?> valueClass = valueClasses[level];
+			if (kind == MAP && !prepared[level])
+				checkSupportedClass(keyClasses[level]);
+			else if (!prepared[level])
+				checkSupportedClass(valueClass);
+
+			switch (kind)
+			{
+				case ARRAY:
+				{
+					Object[] array = (Object[]) container;
+					count(array.length);
+					for (int i = 0; i < array.length; i++)
+						if (array[i] != null && !acceptValue(level, valueClass, array[i]))
+							throw new ParameterTypeException("array.UnexpectedType", path(i));
+					break;
+				}
+				case LIST:
+				{
+					List<?> list = (List<?>) container;
+					count(list.size());
+					int i = 0;
+					for (Object element : list)
+					{
+						if (element != null && !acceptValue(level, valueClass, element))
+							throw new ParameterTypeException("list.UnexpectedType", path(i));
+						i++;
+					}
+					break;
+				}
+				default:
+				{
+					// All keys are checked before any value, so a bad key anywhere
+					// is reported before a bad value anywhere.
+					Map<?, ?> map = (Map<?, ?>) container;
+					count(map.size());
+					Class<?> keyClass = keyClasses[level];
+					ParameterTypeException valueProblem = null;
+					for (Map.Entry<?, ?> entry : map.entrySet())
+					{
+						Object key = entry.getKey();
+						if (key == null)
+							throw new ParameterTypeException("map.NullKeys", path(null));
+						if (!acceptKey(level, keyClass, key))
+							throw new ParameterTypeException("map.UnexpectedKeyType", path(key));
+						Object value = entry.getValue();
+						if (valueProblem == null && value != null && !acceptValue(level, valueClass, value))
+							valueProblem = new ParameterTypeException("map.UnexpectedValueType", path(key));
+					}
+					if (!prepared[level])
+						checkSupportedClass(valueClass);
+					if (valueProblem != null)
+						throw valueProblem;
+				}
+			}
+
+			if (!prepared[level])
+			{
+				// the elements at this level will be descended into
+				if (level < last)
+				{
+					kinds[level+1] = decide(valueClass);
+					if (kinds[level+1] == BASIC)
+						throw new ParameterTypeException("parameterType.Unsupported");
+				}
+				prepared[level] = true;
+			}
+		}
+
+		private boolean acceptValue(int level, Class<?> expected, Object value)
+		{
+			Class<?> c = value.getClass();
+			if (c == acceptedValues[level])
+				return true;
+			if (!expected.isAssignableFrom(c))
+				return false;
+			acceptedValues[level] = c;
+			return true;
+		}
+
+		private boolean acceptKey(int level, Class<?> expected, Object key)
+		{
+			Class<?> c = key.getClass();
+			if (c == acceptedKeys[level])
+				return true;
+			if (!expected.isAssignableFrom(c))
+				return false;
+			acceptedKeys[level] = c;
+			return true;
+		}
+
+		private void count(int more)
+		{
+			elements += more;
+			if (elements > maximum || elements < 0)
+				throw new ParameterTypeException("parameterType.TooManyElements", path(null));
+		}
+
+		/**
+		 * The path to the child currently visited at each level of the stack, plus
+		 * <code>position</code> within the container being scanned (if not null).
+		 */
+		private String path(Object position)
+		{
+			StringBuilder path = new StringBuilder();
+			for (Frame frame : stack)
+				path.append('[').append(frame.position()).append(']');
+			if (position != null)
+				path.append('[').append(position).append(']');
+			return path.toString();
+		}
+
+		private static String nullMessage(int kind)
+		{
+			switch (kind)
+			{
+				case ARRAY: return "array.Null";
+				case LIST: return "list.Null";
+				default: return "map.Null";
+			}
+		}
+	}
+
+	/**
+	 * A container whose children are being visited.
+	 */
+	private static final class Frame
+	{
+		final int level;
+		private final Object[] array;
+		private final Iterator<?> iterator; // of list elements or map entries
+		private final boolean isMap;
+		private int index = -1;
+		private Object key = null;
+		Object current = null;
+
+		Frame(Object container, int kind, int level)
+		{
+			this.level = level;
+			array = (kind == ARRAY ? (Object[]) container : null);
+			isMap = (kind == MAP);
+			if (kind == LIST)
+				iterator = ((List<?>) container).iterator();
+			else if (isMap)
+				iterator = ((Map<?, ?>) container).entrySet().iterator();
+			else
+				iterator = null;
+		}
+
+		boolean next()
+		{
+			if (array != null)
+			{
+				if (++index >= array.length)
+					return false;
+				current = array[index];
+				return true;
+			}
+			if (!iterator.hasNext())
+				return false;
+			index++;
+			if (isMap)
+			{
+				Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iterator.next();
+				key = entry.getKey();
+				current = entry.getValue();
+			}
+			else
+				current = iterator.next();
+			return true;
+		}
+
+		Object position()
+		{
+			return (isMap ? key : (Object) index);
+		}
+	}
+}
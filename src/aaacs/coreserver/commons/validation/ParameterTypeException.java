@@ -0,0 +1,37 @@
+package aaacs.coreserver.commons.validation;
+
+/**
+ * Thrown by the ParameterTypeChecker when a structure does not have the
+ * expected types. The message is the usual unlocalized message key (e.g.
+ * "map.UnexpectedValueType"); the path tells where in the structure the first
+ * offending element was found, e.g. "[2][price]" for the value with the key
+ * "price" of the map at index 2 of a list. The path is empty for problems with
+ * the structure as a whole.
+ */
+public class ParameterTypeException extends IllegalArgumentException
+{
+	// ----- Static members ---------------------------------------------------
+	/**
+	 * Serialization Version Number
+	 */
+	private static final long serialVersionUID = 1000L;
+
+	// ----- Instance members -------------------------------------------------
+	private final String path;
+
+	public ParameterTypeException(String message, String path)
+	{
+		super(message);
+		this.path = (path == null ? "" : path);
+	}
+
+	public ParameterTypeException(String message)
+	{
+		this(message, null);
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+}
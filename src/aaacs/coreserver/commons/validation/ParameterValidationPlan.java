@@ -0,0 +1,695 @@
+package aaacs.coreserver.commons.validation;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * The compiled form of a ParameterValidator: a FieldValidationPlan that also
+ * knows how to check arrays, lists, and maps. See FieldValidationPlan for what
+ * compiling buys.
+ *
+ * As with the individual checks, every structure check comes in a form that
+ * returns a map of results and a form that reports into a ValidationResults.
+ * The latter allocates nothing at all for a valid structure: the elements are
+ * checked in place, and element keys such as "name[3]" are only built for the
+ * elements that actually fail.
+ */
+public class ParameterValidationPlan extends FieldValidationPlan
+{
+	// ----- Static members ---------------------------------------------------
+	// The element types supported by the typed list/array checks
+	private static final int BYTE = 0;
+	private static final int SHORT = 1;
+	private static final int INTEGER = 2;
+	private static final int LONG = 3;
+	private static final int FLOAT = 4;
+	private static final int DOUBLE = 5;
+	private static final int BOOLEAN = 6;
+	private static final int STRING = 7;
+	private static final int DATE = 8;
+	private static final int TIMESTAMP = 9;
+
+	private static final Class<?>[] elementClasses =
+	{
+		Byte.class, Short.class, Integer.class, Long.class, Float.class,
+		Double.class, Boolean.class, String.class, Date.class, Timestamp.class
+	};
+	private static final Class<?>[] arrayClasses =
+	{
+		Byte[].class, Short[].class, Integer[].class, Long[].class, Float[].class,
+		Double[].class, Boolean[].class, String[].class, Date[].class, Timestamp[].class
+	};
+
+	// Parallel checking: no chunk is ever smaller than this, and a structure is
+	// split into at most this many chunks per processor.
+	private static final int processors = Runtime.getRuntime().availableProcessors();
+	private static final int MINIMUM_CHUNK_SIZE = 256;
+	private static final int CHUNKS_PER_PROCESSOR = 4;
+
+	/**
+	 * The threads that check the elements of large structures in parallel. The
+	 * pool is only created when it is first needed, and its daemon threads never
+	 * keep the VM alive.
+	 */
+	private static final class Workers
+	{
+		static final ExecutorService pool = Executors.newFixedThreadPool(processors,
+			new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "ParameterValidation-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	}
+
+	// ----- Instance members -------------------------------------------------
+	protected final boolean allowNullStructure;
+	protected final Integer validMinimumSize;
+	protected final Integer validMaximumSize;
+	protected final boolean checkIndividualElements;
+	protected final int parallelThreshold; // 0 if elements are always checked sequentially
+	protected final Long validChecksum;
+
+	ParameterValidationPlan(ParameterValidator v)
+	{
+		super(v);
+		allowNullStructure = (v.allowNullStructure != null && v.allowNullStructure);
+		validMinimumSize = v.validMinimumSize;
+		validMaximumSize = v.validMaximumSize;
+		checkIndividualElements = (v.checkIndividualElements == null || v.checkIndividualElements);
+		parallelThreshold = (v.parallelThreshold != null && v.parallelThreshold > 0 ?
+			Math.max(v.parallelThreshold, MINIMUM_CHUNK_SIZE * 2) : 0);
+		validChecksum = v.validChecksum;
+	}
+
+	public boolean isAllowNullStructure() { return allowNullStructure; }
+	public boolean isCheckIndividualElements() { return checkIndividualElements; }
+	public Integer getValidMinimumSize() { return validMinimumSize; }
+	public Integer getValidMaximumSize() { return validMaximumSize; }
+
+	// ----- Typed list and array checks --------------------------------------
+	// The array checks also accept the matching primitive arrays (byte[] for
+	// Byte, int[] for Integer, and so on).
+	public Map<String, List<MsgArgsPair>> checkByteList(Object parameterAsObject) { return listResults(parameterAsObject, BYTE); }
+	public boolean checkByteList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, BYTE, sink); }
+	public Map<String, List<MsgArgsPair>> checkByteArray(Object parameterAsObject) { return arrayResults(parameterAsObject, BYTE); }
+	public boolean checkByteArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, BYTE, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkShortList(Object parameterAsObject) { return listResults(parameterAsObject, SHORT); }
+	public boolean checkShortList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, SHORT, sink); }
+	public Map<String, List<MsgArgsPair>> checkShortArray(Object parameterAsObject) { return arrayResults(parameterAsObject, SHORT); }
+	public boolean checkShortArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, SHORT, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkIntegerList(Object parameterAsObject) { return listResults(parameterAsObject, INTEGER); }
+	public boolean checkIntegerList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, INTEGER, sink); }
+	public Map<String, List<MsgArgsPair>> checkIntegerArray(Object parameterAsObject) { return arrayResults(parameterAsObject, INTEGER); }
+	public boolean checkIntegerArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, INTEGER, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkLongList(Object parameterAsObject) { return listResults(parameterAsObject, LONG); }
+	public boolean checkLongList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, LONG, sink); }
+	public Map<String, List<MsgArgsPair>> checkLongArray(Object parameterAsObject) { return arrayResults(parameterAsObject, LONG); }
+	public boolean checkLongArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, LONG, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkFloatList(Object parameterAsObject) { return listResults(parameterAsObject, FLOAT); }
+	public boolean checkFloatList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, FLOAT, sink); }
+	public Map<String, List<MsgArgsPair>> checkFloatArray(Object parameterAsObject) { return arrayResults(parameterAsObject, FLOAT); }
+	public boolean checkFloatArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, FLOAT, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkDoubleList(Object parameterAsObject) { return listResults(parameterAsObject, DOUBLE); }
+	public boolean checkDoubleList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, DOUBLE, sink); }
+	public Map<String, List<MsgArgsPair>> checkDoubleArray(Object parameterAsObject) { return arrayResults(parameterAsObject, DOUBLE); }
+	public boolean checkDoubleArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, DOUBLE, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkBooleanList(Object parameterAsObject) { return listResults(parameterAsObject, BOOLEAN); }
+	public boolean checkBooleanList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, BOOLEAN, sink); }
+	public Map<String, List<MsgArgsPair>> checkBooleanArray(Object parameterAsObject) { return arrayResults(parameterAsObject, BOOLEAN); }
+	public boolean checkBooleanArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, BOOLEAN, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkStringList(Object parameterAsObject) { return listResults(parameterAsObject, STRING); }
+	public boolean checkStringList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, STRING, sink); }
+	public Map<String, List<MsgArgsPair>> checkStringArray(Object parameterAsObject) { return arrayResults(parameterAsObject, STRING); }
+	public boolean checkStringArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, STRING, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkDateList(Object parameterAsObject) { return listResults(parameterAsObject, DATE); }
+	public boolean checkDateList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, DATE, sink); }
+	public Map<String, List<MsgArgsPair>> checkDateArray(Object parameterAsObject) { return arrayResults(parameterAsObject, DATE); }
+	public boolean checkDateArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, DATE, sink); }
+
+	public Map<String, List<MsgArgsPair>> checkTimestampList(Object parameterAsObject) { return listResults(parameterAsObject, TIMESTAMP); }
+	public boolean checkTimestampList(Object parameterAsObject, ValidationResults sink) { return checkList(parameterAsObject, TIMESTAMP, sink); }
+	public Map<String, List<MsgArgsPair>> checkTimestampArray(Object parameterAsObject) { return arrayResults(parameterAsObject, TIMESTAMP); }
+	public boolean checkTimestampArray(Object parameterAsObject, ValidationResults sink) { return checkArray(parameterAsObject, TIMESTAMP, sink); }
+
+	private Map<String, List<MsgArgsPair>> listResults(Object parameterAsObject, int type)
+	{
+		ValidationResults results = new ValidationResults();
+		checkList(parameterAsObject, type, results);
+		return results.takeResults();
+	}
+
+	private Map<String, List<MsgArgsPair>> arrayResults(Object parameterAsObject, int type)
+	{
+		ValidationResults results = new ValidationResults();
+		checkArray(parameterAsObject, type, results);
+		return results.takeResults();
+	}
+
+	/**
+	 * A list must be non-null (unless null structures are allowed), and its
+	 * elements must all be null or of exactly the expected class, otherwise
+	 * there is no point in looking any further.
+	 */
+	protected boolean checkList(Object parameterAsObject, int type, ValidationResults sink)
+	{
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("list.Null"));
+			return false;
+		}
+
+		if (!(parameterAsObject instanceof List))
+		{
+			sink.add(name, new MsgArgsPair("list.UnexpectedType"));
+			return false;
+		}
+		List<?> list = (List<?>) parameterAsObject;
+		Class<?> elementClass = elementClasses[type];
+		for (Object o : list)
+			if (o != null && o.getClass() != elementClass)
+			{
+				sink.add(name, new MsgArgsPair("list.UnexpectedType"));
+				return false;
+			}
+
+		int mark = sink.getCount();
+		int size = list.size();
+		if (validMinimumSize != null && size < validMinimumSize)
+			sink.add(name, new MsgArgsPair("list.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && size > validMaximumSize)
+			sink.add(name, new MsgArgsPair("list.TooLong", gatherArgs(validMaximumSize)));
+
+		if (checkIndividualElements)
+		{
+			if (isParallel(size))
+				checkElementsInParallel(list.toArray(), size, type, sink);
+			else
+			{
+				int i = 0;
+				for (Object o : list)
+					checkElement(type, o, sink, i++);
+			}
+		}
+		return sink.getCount() == mark;
+	}
+
+	protected boolean checkArray(Object parameterAsObject, int type, ValidationResults sink)
+	{
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("array.Null"));
+			return false;
+		}
+
+		Object[] array = null;
+		int length;
+		if (arrayClasses[type].isInstance(parameterAsObject))
+		{
+			array = (Object[]) parameterAsObject;
+			length = array.length;
+		}
+		else if ((length = primitiveArrayLength(parameterAsObject, type)) < 0)
+		{
+			sink.add(name, new MsgArgsPair("array.UnexpectedType"));
+			return false;
+		}
+
+		int mark = sink.getCount();
+		if (validMinimumSize != null && length < validMinimumSize)
+			sink.add(name, new MsgArgsPair("array.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && length > validMaximumSize)
+			sink.add(name, new MsgArgsPair("array.TooLong", gatherArgs(validMaximumSize)));
+
+		if (checkIndividualElements)
+		{
+			if (isParallel(length))
+				checkElementsInParallel(parameterAsObject, length, type, sink);
+			else
+				checkElements(parameterAsObject, type, sink, 0, length);
+		}
+		return sink.getCount() == mark;
+	}
+
+	/**
+	 * Arrays may also be given as the matching primitive arrays. Their elements
+	 * cannot be null; int, long, and double elements are checked without being
+	 * boxed, and the others are boxed one at a time (which for bytes and
+	 * booleans costs nothing, as their wrappers are all cached).
+	 *
+	 * @return the length of the primitive array, or -1 if parameterAsObject is
+	 * not a primitive array of the right type.
+	 */
+	private static int primitiveArrayLength(Object parameterAsObject, int type)
+	{
+		if (type == INTEGER && parameterAsObject instanceof int[])
+			return ((int[]) parameterAsObject).length;
+		if (type == LONG && parameterAsObject instanceof long[])
+			return ((long[]) parameterAsObject).length;
+		if (type == DOUBLE && parameterAsObject instanceof double[])
+			return ((double[]) parameterAsObject).length;
+		if (type == BYTE && parameterAsObject instanceof byte[])
+			return ((byte[]) parameterAsObject).length;
+		if (type == SHORT && parameterAsObject instanceof short[])
+			return ((short[]) parameterAsObject).length;
+		if (type == FLOAT && parameterAsObject instanceof float[])
+			return ((float[]) parameterAsObject).length;
+		if (type == BOOLEAN && parameterAsObject instanceof boolean[])
+			return ((boolean[]) parameterAsObject).length;
+		return -1;
+	}
+
+	/**
+	 * Checks the elements <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) of an array of objects or of one of the primitive arrays.
+	 */
+	private void checkElements(Object elements, int type, ValidationResults sink, int from, int to)
+	{
+		if (elements instanceof Object[])
+		{
+			Object[] array = (Object[]) elements;
+			for (int i = from; i < to; i++)
+				checkElement(type, array[i], sink, i);
+		}
+		else if (unconstrained)
+			return;
+		else if (elements instanceof int[])
+		{
+			int[] array = (int[]) elements;
+			for (int i = from; i < to; i++)
+				checkInteger(array[i], sink, i);
+		}
+		else if (elements instanceof long[])
+		{
+			long[] array = (long[]) elements;
+			for (int i = from; i < to; i++)
+				checkLong(array[i], sink, i);
+		}
+		else if (elements instanceof double[])
+		{
+			double[] array = (double[]) elements;
+			for (int i = from; i < to; i++)
+				checkDouble(array[i], sink, i);
+		}
+		else if (elements instanceof byte[])
+		{
+			byte[] array = (byte[]) elements;
+			for (int i = from; i < to; i++)
+				checkByte(array[i], sink, i);
+		}
+		else if (elements instanceof short[])
+		{
+			short[] array = (short[]) elements;
+			for (int i = from; i < to; i++)
+				checkShort(array[i], sink, i);
+		}
+		else if (elements instanceof float[])
+		{
+			float[] array = (float[]) elements;
+			for (int i = from; i < to; i++)
+				checkFloat(array[i], sink, i);
+		}
+		else
+		{
+			boolean[] array = (boolean[]) elements;
+			for (int i = from; i < to; i++)
+				checkBoolean(array[i], sink, i);
+		}
+	}
+
+	private boolean isParallel(int length)
+	{
+		return parallelThreshold > 0 && length >= parallelThreshold && processors > 1 &&
+			(!unconstrained || !allowNullElement);
+	}
+
+	/**
+	 * Splits the elements into chunks that are checked by the worker threads,
+	 * except for the first one, which the calling thread checks itself straight
+	 * into the sink. Each other chunk reports into its own ValidationResults,
+	 * and those are appended to the sink in chunk order, so the element results
+	 * come out in exactly the same order as when checked sequentially.
+	 */
+	private void checkElementsInParallel(final Object elements, int length,
+		final int type, ValidationResults sink)
+	{
+		int chunkSize = Math.max(MINIMUM_CHUNK_SIZE,
+			(length + processors * CHUNKS_PER_PROCESSOR - 1) / (processors * CHUNKS_PER_PROCESSOR));
+		int chunkCount = (length + chunkSize - 1) / chunkSize;
+
+		List<Future<ValidationResults>> futures = new ArrayList<Future<ValidationResults>>(chunkCount);
+		for (int c = 1; c < chunkCount; c++)
+		{
+			final int from = c * chunkSize;
+			final int to = Math.min(from + chunkSize, length);
+			futures.add(Workers.pool.submit(new Callable<ValidationResults>()
+			{
+				public ValidationResults call()
+				{
+					ValidationResults results = new ValidationResults();
+					checkElements(elements, type, results, from, to);
+					return results;
+				}
+			}));
+		}
+
+		boolean interrupted = false;
+		try
+		{
+			checkElements(elements, type, sink, 0, Math.min(chunkSize, length));
+			for (Future<ValidationResults> future : futures)
+			{
+				ValidationResults results = null;
+				while (results == null)
+				{
+					try { results = future.get(); }
+					catch (InterruptedException e) { interrupted = true; }
+				}
+				sink.addAll(results);
+			}
+		}
+		catch (ExecutionException e)
+		{
+			// e.g. the ClassCastException of unusable bit masks
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+		finally
+		{
+			for (Future<ValidationResults> future : futures)
+				future.cancel(false);
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	// ----- Binary check -----------------------------------------------------
+	/*
+	 * A binary parameter is a ByteBuffer (its remaining bytes). The size bounds
+	 * apply to its number of bytes, and the checksum, if any, to its contents;
+	 * the buffer itself is never moved.
+	 */
+	public Map<String, List<MsgArgsPair>> checkBinary(Object parameterAsObject)
+	{
+		ValidationResults results = new ValidationResults();
+		checkBinary(parameterAsObject, results);
+		return results.takeResults();
+	}
+
+	public boolean checkBinary(Object parameterAsObject, ValidationResults sink)
+	{
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("binary.Null"));
+			return false;
+		}
+		if (!(parameterAsObject instanceof ByteBuffer))
+		{
+			sink.add(name, new MsgArgsPair("binary.UnexpectedType"));
+			return false;
+		}
+
+		ByteBuffer binary = (ByteBuffer) parameterAsObject;
+		int size = binary.remaining();
+		int mark = sink.getCount();
+		if (validMinimumSize != null && size < validMinimumSize)
+			sink.add(name, new MsgArgsPair("binary.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && size > validMaximumSize)
+			sink.add(name, new MsgArgsPair("binary.TooLong", gatherArgs(validMaximumSize)));
+		if (validChecksum != null && sink.getCount() == mark && checksum(binary) != validChecksum)
+			sink.add(name, new MsgArgsPair("binary.BadChecksum"));
+		return sink.getCount() == mark;
+	}
+
+	/**
+	 * @return the CRC-32 of the remaining bytes of <code>binary</code>, which
+	 * is left untouched; direct buffers are read a few kilobytes at a time.
+	 */
+	public static long checksum(ByteBuffer binary)
+	{
+		CRC32 crc = new CRC32();
+		if (binary.hasArray())
+			crc.update(binary.array(), binary.arrayOffset() + binary.position(), binary.remaining());
+		else
+		{
+			ByteBuffer view = binary.duplicate();
+			byte[] chunk = new byte[Math.min(8192, view.remaining())];
+			while (view.hasRemaining())
+			{
+				int length = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, length);
+				crc.update(chunk, 0, length);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Checks one element of a typed list whose elements are of
+	 * <code>elementClass</code> (Byte through Timestamp) on its own, e.g. one
+	 * that is being streamed rather than collected into a List first. As with
+	 * the whole lists, an element of any other class is an "UnexpectedType",
+	 * and the element checks only apply if checkIndividualElements is on. A
+	 * null element is a "NullElements" whenever nulls are not allowed, though,
+	 * just as Parameters refuses a whole list with one.
+	 */
+	public boolean checkElement(Class<?> elementClass, Object element,
+		ValidationResults sink, int index)
+	{
+		int type = 0;
+		while (type < elementClasses.length && elementClasses[type] != elementClass)
+			type++;
+		if (type == elementClasses.length)
+			throw new IllegalArgumentException("parameterType.Unsupported");
+
+		if (element == null)
+		{
+			if (allowNullElement)
+				return true;
+			sink.add(name, index, new MsgArgsPair("list.NullElements"));
+			return false;
+		}
+		if (element.getClass() != elementClass)
+		{
+			sink.add(name, index, new MsgArgsPair("list.UnexpectedType"));
+			return false;
+		}
+		return !checkIndividualElements || checkElement(type, element, sink, index);
+	}
+
+	private boolean checkElement(int type, Object element, ValidationResults sink, int index)
+	{
+		switch (type)
+		{
+			case BYTE: return checkByte((Byte) element, sink, index);
+			case SHORT: return checkShort((Short) element, sink, index);
+			case INTEGER: return checkInteger((Integer) element, sink, index);
+			case LONG: return checkLong((Long) element, sink, index);
+			case FLOAT: return checkFloat((Float) element, sink, index);
+			case DOUBLE: return checkDouble((Double) element, sink, index);
+			case BOOLEAN: return checkBoolean((Boolean) element, sink, index);
+			case STRING: return checkString((String) element, sink, index);
+			case DATE: return checkDate((Date) element, sink, index);
+			case TIMESTAMP: return checkTimestamp((Timestamp) element, sink, index);
+		}
+		throw new IllegalArgumentException("parameterType.Unsupported");
+	}
+
+	// ----- Untyped structure checks -----------------------------------------
+	/*
+	 * The next three methods check the types throughout the structure with the
+	 * ParameterTypeChecker. An "UnexpectedType" result has the path to the first
+	 * offending element as its argument.
+	 */
+	public Map<String, List<MsgArgsPair>> checkArray(
+		Object parameterAsObject, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		ValidationResults results = new ValidationResults();
+		checkArray(parameterAsObject, keyClasses, valueClasses, results);
+		return results.takeResults();
+	}
+
+	public boolean checkArray(Object parameterAsObject,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, ValidationResults sink)
+	{
+		if (keyClasses.length != valueClasses.length)
+			throw new IllegalArgumentException("map.KeyValueClassDisparity");
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("array.Null"));
+			return false;
+		}
+
+		if (!(parameterAsObject instanceof Object[]))
+		{
+			sink.add(name, new MsgArgsPair("array.UnexpectedType"));
+			return false;
+		}
+		Object[] array = (Object[]) parameterAsObject;
+
+		int mark = sink.getCount();
+		try { ParameterTypeChecker.checkArray(array, keyClasses, valueClasses); }
+		catch (Exception e) { sink.add(name, new MsgArgsPair("array.UnexpectedType", typeProblemArgs(e))); }
+
+		if (validMinimumSize != null && array.length < validMinimumSize)
+			sink.add(name, new MsgArgsPair("array.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && array.length > validMaximumSize)
+			sink.add(name, new MsgArgsPair("array.TooLong", gatherArgs(validMaximumSize)));
+
+		if (checkIndividualElements && !allowNullElement)
+			for (int i = 0; i < array.length; i++)
+				if (array[i] == null)
+					sink.add(name, i, new MsgArgsPair("array.NullElements"));
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkList(
+		Object parameterAsObject, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		ValidationResults results = new ValidationResults();
+		checkList(parameterAsObject, keyClasses, valueClasses, results);
+		return results.takeResults();
+	}
+
+	public boolean checkList(Object parameterAsObject,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, ValidationResults sink)
+	{
+		if (keyClasses.length != valueClasses.length)
+			throw new IllegalArgumentException("map.KeyValueClassDisparity");
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("list.Null"));
+			return false;
+		}
+
+		if (!(parameterAsObject instanceof List))
+		{
+			sink.add(name, new MsgArgsPair("list.UnexpectedType"));
+			return false;
+		}
+		List<?> list = (List<?>) parameterAsObject;
+
+		int mark = sink.getCount();
+		try { ParameterTypeChecker.checkList(list, keyClasses, valueClasses); }
+		catch (Exception e) { sink.add(name, new MsgArgsPair("list.UnexpectedType", typeProblemArgs(e))); }
+
+		int size = list.size();
+		if (validMinimumSize != null && size < validMinimumSize)
+			sink.add(name, new MsgArgsPair("list.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && size > validMaximumSize)
+			sink.add(name, new MsgArgsPair("list.TooLong", gatherArgs(validMaximumSize)));
+
+		if (checkIndividualElements && !allowNullElement)
+		{
+			int i = 0;
+			for (Object o : list)
+			{
+				if (o == null)
+					sink.add(name, i, new MsgArgsPair("list.NullElements"));
+				i++;
+			}
+		}
+		return sink.getCount() == mark;
+	}
+
+	public Map<String, List<MsgArgsPair>> checkMap(
+		Object parameterAsObject, Class<?>[] keyClasses, Class<?>[] valueClasses)
+	{
+		ValidationResults results = new ValidationResults();
+		checkMap(parameterAsObject, keyClasses, valueClasses, results);
+		return results.takeResults();
+	}
+
+	public boolean checkMap(Object parameterAsObject,
+		Class<?>[] keyClasses, Class<?>[] valueClasses, ValidationResults sink)
+	{
+		if (keyClasses.length != valueClasses.length)
+			throw new IllegalArgumentException("map.KeyValueClassDisparity");
+		if (parameterAsObject == null)
+		{
+			if (allowNullStructure)
+				return true;
+			sink.add(name, new MsgArgsPair("map.Null"));
+			return false;
+		}
+
+		if (!(parameterAsObject instanceof Map))
+		{
+			sink.add(name, new MsgArgsPair("map.UnexpectedType"));
+			return false;
+		}
+		Map<?, ?> map = (Map<?, ?>) parameterAsObject;
+
+		int mark = sink.getCount();
+		try { ParameterTypeChecker.checkMap(map, keyClasses, valueClasses); }
+		catch (Exception e) { sink.add(name, new MsgArgsPair("map.UnexpectedType", typeProblemArgs(e))); }
+
+		// yes, the list messages: that is what ParameterValidator always reported
+		int size = map.size();
+		if (validMinimumSize != null && size < validMinimumSize)
+			sink.add(name, new MsgArgsPair("list.TooShort", gatherArgs(validMinimumSize)));
+		if (validMaximumSize != null && size > validMaximumSize)
+			sink.add(name, new MsgArgsPair("list.TooLong", gatherArgs(validMaximumSize)));
+
+		if (checkIndividualElements)
+		{
+			for (Map.Entry<?, ?> entry : map.entrySet())
+			{
+				Object key = entry.getKey();
+				if (key == null)
+					sink.add(name + "[" + key + "]", new MsgArgsPair("map.NullKeys"));
+				if (!allowNullElement && entry.getValue() == null)
+					sink.add(name + "[" + key + "]", new MsgArgsPair("map.NullValues"));
+			}
+		}
+		return sink.getCount() == mark;
+	}
+
+	/**
+	 * The arguments of an "UnexpectedType" result: where the problem was found,
+	 * if the type checker could tell.
+	 */
+	private Object[] typeProblemArgs(Exception e)
+	{
+		if (e instanceof ParameterTypeException)
+			return gatherArgs(((ParameterTypeException) e).getPath());
+		return null;
+	}
+}
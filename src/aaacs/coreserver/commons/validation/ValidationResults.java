@@ -0,0 +1,146 @@
+package aaacs.coreserver.commons.validation;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * A reusable collector for validation results, to be passed into the checks of
+ * a FieldValidationPlan or ParameterValidationPlan. Nothing at all is allocated
+ * while values turn out to be valid: the results map, the per-item lists, and
+ * even the "name[i]" item keys are only created when the first problem with
+ * that item is reported.
+ *
+ * The results have the same shape as those returned by FieldValidator and
+ * ParameterValidator: item name to list of MsgArgsPair, in the order the items
+ * were first reported.
+ *
+ * Instances are not thread-safe; give each thread its own and call
+ * <code>reset()</code> between uses.
+ */
+public class ValidationResults
+{
+	// ----- Instance members -------------------------------------------------
+	private Map<String, List<MsgArgsPair>> results = null;
+	private int count = 0;
+
+	// the item that was reported on last, so that its key is only built once
+	private String lastName = null;
+	private int lastIndex = -1;
+	private List<MsgArgsPair> lastResults = null;
+
+	public ValidationResults()
+	{
+	}
+
+	// ----- Management methods -----------------------------------------------
+	/**
+	 * Forgets all results, making the collector ready for reuse.
+	 */
+	public ValidationResults reset()
+	{
+		results = null;
+		count = 0;
+		lastName = null;
+		lastIndex = -1;
+		lastResults = null;
+		return this;
+	}
+
+	public boolean isEmpty() { return count == 0; }
+
+	/**
+	 * @return the total number of results reported so far (over all items).
+	 * Comparing it before and after a check tells whether that check failed.
+	 */
+	public int getCount() { return count; }
+
+	/**
+	 * @return the results collected so far, or null if there are none. The
+	 * map stays attached to this collector until <code>reset()</code>.
+	 */
+	public Map<String, List<MsgArgsPair>> getResults()
+	{
+		return results;
+	}
+
+	/**
+	 * @return the results collected so far (or null if there are none) and
+	 * detaches them from this collector, which is then reset.
+	 */
+	public Map<String, List<MsgArgsPair>> takeResults()
+	{
+		Map<String, List<MsgArgsPair>> taken = results;
+		reset();
+		return taken;
+	}
+
+	// ----- Reporting methods ------------------------------------------------
+	/**
+	 * Reports a problem with the item <code>name</code>.
+	 */
+	public void add(String name, MsgArgsPair result)
+	{
+		add(name, -1, result);
+	}
+
+	/**
+	 * Reports a problem with the element <code>index</code> of the structure
+	 * <code>name</code>, i.e. the item "name[index]". A negative index stands
+	 * for the item <code>name</code> itself.
+	 */
+	public void add(String name, int index, MsgArgsPair result)
+	{
+		if (lastResults == null || index != lastIndex || !equal(name, lastName))
+		{
+			String key = (index < 0 ? name : name + "[" + index + "]");
+			lastResults = get(key);
+			lastName = name;
+			lastIndex = index;
+		}
+		lastResults.add(result);
+		count++;
+	}
+
+	/**
+	 * Reports problems with an item whose key has already been built.
+	 */
+	public void addAll(String key, List<MsgArgsPair> keyResults)
+	{
+		if (keyResults == null || keyResults.isEmpty())
+			return;
+		get(key).addAll(keyResults);
+		count += keyResults.size();
+		lastResults = null;
+	}
+
+	/**
+	 * Appends everything collected by another collector.
+	 */
+	public void addAll(ValidationResults other)
+	{
+		if (other == null || other.results == null)
+			return;
+		for (Map.Entry<String, List<MsgArgsPair>> entry : other.results.entrySet())
+			addAll(entry.getKey(), entry.getValue());
+	}
+
+	private List<MsgArgsPair> get(String key)
+	{
+		if (results == null)
+			results = new LinkedHashMap<String, List<MsgArgsPair>>();
+		List<MsgArgsPair> keyResults = results.get(key);
+		if (keyResults == null)
+		{
+			keyResults = new Vector<MsgArgsPair>();
+			results.put(key, keyResults);
+		}
+		return keyResults;
+	}
+
+	private static boolean equal(String a, String b)
+	{
+		return (a == null ? b == null : a.equals(b));
+	}
+}